@@ -0,0 +1,52 @@
+package com.github.rmannibucau.dita.maven.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// JMH main defaulting to a JSON result named after the benchmarked plugin version (target/jmh-<version>.json)
+// so runs of two versions can be compared, the dita.* system properties are forwarded to the forked JVMs
+public final class Benchmarks {
+
+    private Benchmarks() {
+        // no-op
+    }
+
+    public static void main(final String[] args) throws CommandLineOptionException, RunnerException {
+        final CommandLineOptions commandLine = new CommandLineOptions(args);
+        final ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue()) {
+            options.result("target/jmh-" + pluginVersion() + ".json");
+        }
+        Stream.of(Environment.DISTRIBUTION, Environment.DISTRIBUTION_ZIP, Environment.VERSION)
+                .filter(k -> System.getProperty(k) != null)
+                .forEach(k -> options.jvmArgsAppend("-D" + k + "=" + System.getProperty(k)));
+        new Runner(options.build()).run();
+    }
+
+    private static String pluginVersion() {
+        try (final InputStream stream = Benchmarks.class.getClassLoader()
+                .getResourceAsStream("META-INF/maven/com.github.rmannibucau/dita-maven-plugin/pom.properties")) {
+            if (stream == null) {
+                return "dev";
+            }
+            final Properties properties = new Properties();
+            properties.load(stream);
+            return properties.getProperty("version", "dev");
+        } catch (final IOException e) {
+            return "dev";
+        }
+    }
+}
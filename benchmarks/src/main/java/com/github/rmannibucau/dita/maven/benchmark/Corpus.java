@@ -0,0 +1,109 @@
+package com.github.rmannibucau.dita.maven.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+// synthetic DITA sources: maps x topics, a share of the paragraphs are conrefs to a library topic and
+// each topic can reference images. generation is seeded so a given spec always produces the same corpus.
+public final class Corpus {
+
+    // 1x1 transparent png
+    private static final byte[] IMAGE = Base64.getDecoder()
+            .decode("iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAYAAAAfFcSJAAAADUlEQVR42mNkYPhfDwAChwGA60e6kgAAAABJRU5ErkJggg==");
+
+    private static final int PARAGRAPHS = 20;
+
+    private static final int LIBRARY_SIZE = 50;
+
+    private final List<File> maps = new ArrayList<>();
+
+    private Corpus() {
+        // no-op
+    }
+
+    // spec: maps x topics/conref density/images per topic, ex: 10x50/0.2/1
+    public static Corpus generate(final File root, final String spec) throws IOException {
+        final String[] parts = spec.split("/");
+        final String[] size = parts[0].split("x");
+        return generate(root, Integer.parseInt(size[0]), Integer.parseInt(size[1]),
+                parts.length > 1 ? Double.parseDouble(parts[1]) : 0, parts.length > 2 ? Integer.parseInt(parts[2]) : 0);
+    }
+
+    public static Corpus generate(final File root, final int mapCount, final int topics, final double conrefDensity,
+            final int images) throws IOException {
+        final Random random = new Random(mapCount * 31L + topics);
+        final Corpus corpus = new Corpus();
+        final File shared = new File(root, "shared");
+        write(new File(shared, "library.dita"), library());
+        Files.createDirectories(new File(shared, "images").toPath());
+        for (int i = 0; i < images; i++) {
+            Files.write(new File(shared, "images/image-" + i + ".png").toPath(), IMAGE);
+        }
+        for (int m = 0; m < mapCount; m++) {
+            final File directory = new File(root, "guide-" + m);
+            final StringBuilder map = new StringBuilder()
+                    .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                    .append("<!DOCTYPE map PUBLIC \"-//OASIS//DTD DITA Map//EN\" \"map.dtd\">\n")
+                    .append("<map>\n  <title>Guide ").append(m).append("</title>\n");
+            for (int t = 0; t < topics; t++) {
+                map.append("  <topicref href=\"topics/topic-").append(t).append(".dita\"/>\n");
+                write(new File(directory, "topics/topic-" + t + ".dita"), topic(m, t, conrefDensity, images, random));
+            }
+            map.append("</map>\n");
+            final File file = new File(directory, "dm-guide-" + m + ".ditamap");
+            write(file, map.toString());
+            corpus.maps.add(file);
+        }
+        return corpus;
+    }
+
+    public List<File> getMaps() {
+        return maps;
+    }
+
+    private static String library() {
+        final StringBuilder topic = new StringBuilder()
+                .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<!DOCTYPE topic PUBLIC \"-//OASIS//DTD DITA Topic//EN\" \"topic.dtd\">\n")
+                .append("<topic id=\"library\">\n  <title>Library</title>\n  <body>\n");
+        for (int i = 0; i < LIBRARY_SIZE; i++) {
+            topic.append("    <p id=\"p").append(i).append("\">Shared paragraph ").append(i)
+                    .append(" reused in many topics.</p>\n");
+        }
+        return topic.append("  </body>\n</topic>\n").toString();
+    }
+
+    private static String topic(final int map, final int index, final double conrefDensity, final int images,
+            final Random random) {
+        final StringBuilder topic = new StringBuilder()
+                .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<!DOCTYPE topic PUBLIC \"-//OASIS//DTD DITA Topic//EN\" \"topic.dtd\">\n")
+                .append("<topic id=\"topic-").append(map).append('-').append(index).append("\">\n")
+                .append("  <title>Topic ").append(index).append("</title>\n  <body>\n");
+        for (int p = 0; p < PARAGRAPHS; p++) {
+            if (random.nextDouble() < conrefDensity) {
+                topic.append("    <p conref=\"../../shared/library.dita#library/p").append(random.nextInt(LIBRARY_SIZE))
+                        .append("\"/>\n");
+            } else {
+                topic.append("    <p>Paragraph ").append(p).append(" of topic ").append(index)
+                        .append(", lorem ipsum dolor sit amet, consectetur adipiscing elit.</p>\n");
+            }
+        }
+        for (int i = 0; i < images; i++) {
+            topic.append("    <image href=\"../../shared/images/image-").append(i).append(".png\"/>\n");
+        }
+        return topic.append("  </body>\n</topic>\n").toString();
+    }
+
+    private static void write(final File file, final String content) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content.getBytes(UTF_8));
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.rmannibucau.dita.maven.benchmark;
+
+import org.apache.maven.plugin.logging.Log;
+
+// a Maven log which only counts the messages, the enabled levels are the ones of a default (non -X) build
+public class DiscardingLog implements Log {
+
+    // written so the messages can't be optimized away
+    private long consumed;
+
+    private void consume(final Object message) {
+        consumed += message == null ? 0 : 1;
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+        return false;
+    }
+
+    @Override
+    public void debug(final CharSequence content) {
+        consume(content);
+    }
+
+    @Override
+    public void debug(final CharSequence content, final Throwable error) {
+        consume(content);
+    }
+
+    @Override
+    public void debug(final Throwable error) {
+        consume(error);
+    }
+
+    @Override
+    public boolean isInfoEnabled() {
+        return true;
+    }
+
+    @Override
+    public void info(final CharSequence content) {
+        consume(content);
+    }
+
+    @Override
+    public void info(final CharSequence content, final Throwable error) {
+        consume(content);
+    }
+
+    @Override
+    public void info(final Throwable error) {
+        consume(error);
+    }
+
+    @Override
+    public boolean isWarnEnabled() {
+        return true;
+    }
+
+    @Override
+    public void warn(final CharSequence content) {
+        consume(content);
+    }
+
+    @Override
+    public void warn(final CharSequence content, final Throwable error) {
+        consume(content);
+    }
+
+    @Override
+    public void warn(final Throwable error) {
+        consume(error);
+    }
+
+    @Override
+    public boolean isErrorEnabled() {
+        return true;
+    }
+
+    @Override
+    public void error(final CharSequence content) {
+        consume(content);
+    }
+
+    @Override
+    public void error(final CharSequence content, final Throwable error) {
+        consume(content);
+    }
+
+    @Override
+    public void error(final Throwable error) {
+        consume(error);
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.rmannibucau.dita.maven.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+// benchmark inputs passed as system properties (-Ddita.distribution=... on the benchmarks.jar command line,
+// they are forwarded to the forked JVMs by Benchmarks)
+public final class Environment {
+
+    public static final String DISTRIBUTION = "dita.distribution";
+
+    public static final String DISTRIBUTION_ZIP = "dita.distributionZip";
+
+    public static final String VERSION = "dita.version";
+
+    private Environment() {
+        // no-op
+    }
+
+    // an extracted DITA-OT
+    public static File distribution() {
+        return required(DISTRIBUTION, "an extracted DITA-OT distribution");
+    }
+
+    // the DITA-OT zip
+    public static File distributionZip() {
+        return required(DISTRIBUTION_ZIP, "a DITA-OT distribution zip");
+    }
+
+    public static String version() {
+        return System.getProperty(VERSION, "3.0.2");
+    }
+
+    public static File tempDir(final String prefix) {
+        try {
+            return Files.createTempDirectory("dita-benchmark-" + prefix + "-").toFile();
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static void delete(final File root) {
+        if (root == null || !root.exists()) {
+            return;
+        }
+        try {
+            Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(final Path dir, final IOException exc) throws IOException {
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static File required(final String property, final String description) {
+        final String value = System.getProperty(property);
+        if (value == null || !new File(value).exists()) {
+            throw new IllegalArgumentException("Set -D" + property + " to " + description + " (got " + value + ")");
+        }
+        return new File(value);
+    }
+}
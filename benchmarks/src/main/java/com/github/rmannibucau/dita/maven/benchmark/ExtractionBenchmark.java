@@ -0,0 +1,66 @@
+package com.github.rmannibucau.dita.maven.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.rmannibucau.dita.maven.Distributions;
+
+// cold extraction of the DITA-OT zip and the shared store path (a hit once the first build extracted it)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExtractionBenchmark {
+
+    private File zip;
+
+    private File workDir;
+
+    private File store;
+
+    @Setup
+    public void setup() throws IOException {
+        zip = Environment.distributionZip();
+        workDir = Environment.tempDir("extraction");
+        store = new File(workDir, "store");
+        Distributions.extractToStore(zip, store);
+    }
+
+    @Setup(Level.Invocation)
+    public void clean() {
+        Environment.delete(new File(workDir, "extracted"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        Environment.delete(workDir);
+    }
+
+    @Benchmark
+    public File extract() throws IOException {
+        final File target = new File(workDir, "extracted");
+        Distributions.extract(zip, target, true);
+        return target;
+    }
+
+    @Benchmark
+    public File storeHit() throws IOException {
+        return Distributions.extractToStore(zip, store);
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.rmannibucau.dita.maven.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.rmannibucau.dita.maven.AsyncLog;
+import com.github.rmannibucau.dita.maven.MapTiming;
+import com.github.rmannibucau.dita.maven.MavenLoggerBridge;
+
+// throughput of the slf4j -> maven log bridge DITA-OT logs through, run with -t N to measure contention
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoggerBridgeBenchmark {
+
+    private AsyncLog asyncLog;
+
+    private MavenLoggerBridge bridge;
+
+    private MavenLoggerBridge asyncBridge;
+
+    @Setup
+    public void setup() {
+        final DiscardingLog log = new DiscardingLog();
+        asyncLog = new AsyncLog(log, 8192, AsyncLog.OverflowPolicy.BLOCK);
+        final MapTiming timing = new MapTiming("dm-guide.ditamap", System.nanoTime());
+        bridge = new MavenLoggerBridge(log, timing);
+        asyncBridge = new MavenLoggerBridge(asyncLog, timing);
+    }
+
+    @TearDown
+    public void tearDown() {
+        asyncLog.close();
+    }
+
+    // the most common case: DITA-OT debug messages in a non -X build
+    @Benchmark
+    public void debugDisabled() {
+        bridge.debug("Processing {} with {}", "topic.dita", "preprocess");
+    }
+
+    @Benchmark
+    public void infoFormatted() {
+        bridge.info("Processing {} with {}", "topic.dita", "preprocess");
+    }
+
+    @Benchmark
+    public void warnCounted() {
+        bridge.warn("[DOTX031E] The file {} is not available", "missing.dita");
+    }
+
+    @Benchmark
+    public void infoAsync() {
+        asyncBridge.info("Processing {} with {}", "topic.dita", "preprocess");
+    }
+}
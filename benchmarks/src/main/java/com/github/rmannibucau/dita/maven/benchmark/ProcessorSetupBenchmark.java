@@ -0,0 +1,68 @@
+package com.github.rmannibucau.dita.maven.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.rmannibucau.dita.maven.DitaRuntime;
+import com.github.rmannibucau.dita.maven.ProcessorCache;
+
+// what a rendering pays before DITA-OT runs: a processor factory (uncached) and a processor from a pooled factory
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProcessorSetupBenchmark {
+
+    @Param({ "0", "128" })
+    private int templateCacheSize;
+
+    private File tempDir;
+
+    private DitaRuntime runtime;
+
+    private ProcessorCache processors;
+
+    @Setup
+    public void setup() {
+        tempDir = Environment.tempDir("setup");
+        runtime = DitaRuntime.create(Environment.distribution(), Environment.version(), templateCacheSize,
+                Thread.currentThread().getContextClassLoader());
+        runtime.getFactories().configure(1, 1, TimeUnit.MINUTES.toMillis(5));
+        processors = new ProcessorCache(runtime, tempDir, "html5", true, false, "STRICT", new HashMap<>(),
+                new DiscardingLog());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        runtime.close();
+        Environment.delete(tempDir);
+    }
+
+    @Benchmark
+    public Object factory() {
+        return runtime.inContext(() -> runtime.getAdapter().newFactory(runtime.getDistribution()));
+    }
+
+    @Benchmark
+    public void processor(final Blackhole blackhole) {
+        processors.withProcessor(blackhole::consume);
+    }
+}
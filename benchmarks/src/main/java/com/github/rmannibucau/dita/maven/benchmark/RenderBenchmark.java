@@ -0,0 +1,103 @@
+package com.github.rmannibucau.dita.maven.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.rmannibucau.dita.maven.DitaRuntime;
+import com.github.rmannibucau.dita.maven.MapTiming;
+import com.github.rmannibucau.dita.maven.ProcessorCache;
+import com.github.rmannibucau.dita.maven.RenderPipeline;
+
+// end to end rendering of a generated corpus with the executor setup of dita:render (async FIFO fork join pool)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RenderBenchmark {
+
+    // maps x topics/conref density/images per topic
+    @Param({ "4x10/0.1/0", "8x50/0.2/1", "16x100/0.3/2" })
+    private String corpus;
+
+    // 0 renders in the calling thread
+    @Param({ "0", "2", "4" })
+    private int parallelism;
+
+    private File workDir;
+
+    private File outputDir;
+
+    private Corpus sources;
+
+    private DitaRuntime runtime;
+
+    private ProcessorCache processors;
+
+    @Setup
+    public void setup() throws IOException {
+        workDir = Environment.tempDir("render");
+        sources = Corpus.generate(new File(workDir, "src"), corpus);
+        runtime = DitaRuntime.create(Environment.distribution(), Environment.version(), 128,
+                Thread.currentThread().getContextClassLoader());
+        runtime.getFactories().configure(1, Math.max(1, parallelism), TimeUnit.MINUTES.toMillis(5));
+        runtime.getFactories().prewarm();
+        processors = new ProcessorCache(runtime, new File(workDir, "temp"), "html5", true, false, "STRICT",
+                new HashMap<>(), new DiscardingLog());
+    }
+
+    @Setup(Level.Invocation)
+    public void cleanOutput() {
+        outputDir = new File(workDir, "output");
+        Environment.delete(outputDir);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        runtime.close();
+        Environment.delete(workDir);
+    }
+
+    @Benchmark
+    public int render() {
+        final RenderPipeline pipeline = new RenderPipeline(parallelism == 0 ? null
+                : new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true), 0, false);
+        try {
+            for (final File map : sources.getMaps()) {
+                final MapTiming timing = new MapTiming(map.getName(), System.nanoTime());
+                pipeline.submit(map.getName(), () -> {
+                    timing.start();
+                    processors.render(map, new File(outputDir, map.getParentFile().getName()), timing);
+                    timing.end(MapTiming.Status.RENDERED);
+                }, () -> {
+                    // never cancelled, no fail fast
+                });
+            }
+            pipeline.await();
+        } finally {
+            pipeline.close();
+        }
+        if (!pipeline.getErrors().isEmpty()) {
+            throw new IllegalStateException("Rendering failed: " + pipeline.getErrors());
+        }
+        return sources.getMaps().size();
+    }
+}
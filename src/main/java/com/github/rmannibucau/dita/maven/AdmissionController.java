@@ -0,0 +1,139 @@
+package com.github.rmannibucau.dita.maven;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.logging.Log;
+
+// admits a rendering only while the estimated heap of the running ones stays under a budget,
+// the allowed concurrency is also lowered when the JVM spends too much time in GC (and raised back slowly)
+public class AdmissionController implements AutoCloseable {
+
+    // a DOM is roughly 10 times bigger than its source and DITA-OT keeps a few per topic along the pipeline
+    private static final long BASE = 32L << 20;
+
+    private static final long PER_SOURCE_BYTE = 10;
+
+    private static final long PER_TOPIC = 512L << 10;
+
+    private static final double GC_HIGH = .25;
+
+    private static final double GC_LOW = .05;
+
+    private final long budget;
+
+    private final int maxConcurrency;
+
+    private final Log log;
+
+    private long reserved;
+
+    private long peakReserved;
+
+    private int running;
+
+    private int allowed;
+
+    private long delayed;
+
+    private long throttles;
+
+    private long lastGcTime = gcTime();
+
+    private long lastSample = System.nanoTime();
+
+    private ScheduledExecutorService monitor;
+
+    public AdmissionController(final double heapShare, final int maxConcurrency, final boolean gcThrottle, final Log log) {
+        this.budget = (long) (Runtime.getRuntime().maxMemory() * heapShare);
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.allowed = this.maxConcurrency;
+        this.log = log;
+        if (gcThrottle && this.maxConcurrency > 1) {
+            monitor = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "dita-gc-monitor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            monitor.scheduleWithFixedDelay(this::sampleGc, 1, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    public static long estimate(final Map<File, byte[]> dependencies) {
+        long bytes = 0;
+        long topics = 0;
+        for (final File file : dependencies.keySet()) {
+            if (MapDependencies.isXml(file)) {
+                bytes += file.length();
+                topics++;
+            }
+        }
+        return BASE + bytes * PER_SOURCE_BYTE + topics * PER_TOPIC;
+    }
+
+    // a rendering is always admitted when nothing runs to not block a map bigger than the budget
+    public synchronized void acquire(final long estimate) throws InterruptedException {
+        boolean waited = false;
+        while (running > 0 && (running >= allowed || reserved + estimate > budget)) {
+            waited = true;
+            wait();
+        }
+        if (waited) {
+            delayed++;
+        }
+        running++;
+        reserved += estimate;
+        peakReserved = Math.max(peakReserved, reserved);
+    }
+
+    public synchronized void release(final long estimate) {
+        running--;
+        reserved -= estimate;
+        notifyAll();
+    }
+
+    public synchronized String stats() {
+        return "Admission control: budget=" + (budget >> 20) + "MB, peak estimated=" + (peakReserved >> 20) + "MB, "
+                + delayed + " delayed renderings, " + throttles + " GC throttlings, concurrency=" + allowed + "/"
+                + maxConcurrency;
+    }
+
+    // additive increase, multiplicative decrease on the share of wall time spent in GC
+    private void sampleGc() {
+        final long now = System.nanoTime();
+        final long gc = gcTime();
+        final double ratio = TimeUnit.MILLISECONDS.toNanos(gc - lastGcTime) / (double) Math.max(1, now - lastSample);
+        lastGcTime = gc;
+        lastSample = now;
+        synchronized (this) {
+            if (ratio > GC_HIGH && allowed > 1) {
+                allowed = Math.max(1, allowed / 2);
+                throttles++;
+                log.warn("GC pressure (" + Math.round(ratio * 100) + "% of the time), lowering rendering concurrency to " + allowed);
+            } else if (ratio < GC_LOW && allowed < maxConcurrency) {
+                allowed++;
+                notifyAll();
+            }
+        }
+    }
+
+    private static long gcTime() {
+        long total = 0;
+        for (final GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, bean.getCollectionTime());
+        }
+        return total;
+    }
+
+    @Override
+    public void close() {
+        if (monitor != null) {
+            monitor.shutdownNow();
+        }
+    }
+}
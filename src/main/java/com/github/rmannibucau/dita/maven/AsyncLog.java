@@ -0,0 +1,242 @@
+package com.github.rmannibucau.dita.maven;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.plugin.logging.Log;
+
+import lombok.RequiredArgsConstructor;
+
+// decouples the rendering threads from the console: messages go to a bounded buffer drained in batches by one thread.
+// when the buffer is full, DROP loses debug/info messages (warnings and errors always wait), BLOCK waits for room.
+public class AsyncLog implements Log, AutoCloseable {
+
+    public enum OverflowPolicy {
+        DROP, BLOCK
+    }
+
+    private static final int BATCH = 512;
+
+    private static final Entry END = new Entry(Level.DEBUG, null, null);
+
+    private final Log delegate;
+
+    private final OverflowPolicy policy;
+
+    private final BlockingQueue<Entry> buffer;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Thread writer;
+
+    // once closed, late messages (timed out renderings) are written directly
+    private volatile boolean closed;
+
+    public AsyncLog(final Log delegate, final int capacity, final OverflowPolicy policy) {
+        this.delegate = delegate;
+        this.policy = policy;
+        this.buffer = new ArrayBlockingQueue<>(Math.max(BATCH, capacity));
+        this.writer = new Thread(this::drain, "dita-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    private void drain() {
+        final List<Entry> batch = new ArrayList<>(BATCH);
+        while (true) {
+            try {
+                batch.add(buffer.take());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            buffer.drainTo(batch, BATCH - 1);
+            for (final Entry entry : batch) {
+                if (entry == END) {
+                    return;
+                }
+                write(entry);
+            }
+            batch.clear();
+        }
+    }
+
+    // same overload as the caller, some Log implementations don't support null parameters
+    private void write(final Entry entry) {
+        switch (entry.level) {
+        case DEBUG:
+            if (entry.error == null) {
+                delegate.debug(entry.message);
+            } else if (entry.message == null) {
+                delegate.debug(entry.error);
+            } else {
+                delegate.debug(entry.message, entry.error);
+            }
+            break;
+        case INFO:
+            if (entry.error == null) {
+                delegate.info(entry.message);
+            } else if (entry.message == null) {
+                delegate.info(entry.error);
+            } else {
+                delegate.info(entry.message, entry.error);
+            }
+            break;
+        case WARN:
+            if (entry.error == null) {
+                delegate.warn(entry.message);
+            } else if (entry.message == null) {
+                delegate.warn(entry.error);
+            } else {
+                delegate.warn(entry.message, entry.error);
+            }
+            break;
+        default:
+            if (entry.error == null) {
+                delegate.error(entry.message);
+            } else if (entry.message == null) {
+                delegate.error(entry.error);
+            } else {
+                delegate.error(entry.message, entry.error);
+            }
+        }
+    }
+
+    private void offer(final Level level, final CharSequence message, final Throwable error) {
+        final Entry entry = new Entry(level, message, error);
+        if (closed) {
+            write(entry);
+            return;
+        }
+        if (policy == OverflowPolicy.DROP && (level == Level.DEBUG || level == Level.INFO)) {
+            if (!buffer.offer(entry)) {
+                dropped.incrementAndGet();
+            }
+            return;
+        }
+        try {
+            while (!buffer.offer(entry, 100, TimeUnit.MILLISECONDS)) {
+                if (closed) { // the writer may be gone, never wait for it
+                    write(entry);
+                    return;
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            write(entry); // don't lose it
+        }
+    }
+
+    // flushes the pending messages
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            buffer.put(END);
+            writer.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dropped.get() > 0) {
+            delegate.warn(dropped.get() + " log messages were dropped, the log buffer was full");
+        }
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+        return delegate.isDebugEnabled();
+    }
+
+    @Override
+    public void debug(final CharSequence content) {
+        offer(Level.DEBUG, content, null);
+    }
+
+    @Override
+    public void debug(final CharSequence content, final Throwable error) {
+        offer(Level.DEBUG, content, error);
+    }
+
+    @Override
+    public void debug(final Throwable error) {
+        offer(Level.DEBUG, null, error);
+    }
+
+    @Override
+    public boolean isInfoEnabled() {
+        return delegate.isInfoEnabled();
+    }
+
+    @Override
+    public void info(final CharSequence content) {
+        offer(Level.INFO, content, null);
+    }
+
+    @Override
+    public void info(final CharSequence content, final Throwable error) {
+        offer(Level.INFO, content, error);
+    }
+
+    @Override
+    public void info(final Throwable error) {
+        offer(Level.INFO, null, error);
+    }
+
+    @Override
+    public boolean isWarnEnabled() {
+        return delegate.isWarnEnabled();
+    }
+
+    @Override
+    public void warn(final CharSequence content) {
+        offer(Level.WARN, content, null);
+    }
+
+    @Override
+    public void warn(final CharSequence content, final Throwable error) {
+        offer(Level.WARN, content, error);
+    }
+
+    @Override
+    public void warn(final Throwable error) {
+        offer(Level.WARN, null, error);
+    }
+
+    @Override
+    public boolean isErrorEnabled() {
+        return delegate.isErrorEnabled();
+    }
+
+    @Override
+    public void error(final CharSequence content) {
+        offer(Level.ERROR, content, null);
+    }
+
+    @Override
+    public void error(final CharSequence content, final Throwable error) {
+        offer(Level.ERROR, content, error);
+    }
+
+    @Override
+    public void error(final Throwable error) {
+        offer(Level.ERROR, null, error);
+    }
+
+    private enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    @RequiredArgsConstructor
+    private static class Entry {
+
+        private final Level level;
+
+        private final CharSequence message;
+
+        private final Throwable error;
+    }
+}
@@ -0,0 +1,127 @@
+package com.github.rmannibucau.dita.maven;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.RequiredArgsConstructor;
+
+// per map fingerprint (map graph content + rendering configuration) of the last successful rendering
+@RequiredArgsConstructor
+public class BuildState {
+
+    private final File file;
+
+    private final String configuration;
+
+    private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+
+    public static BuildState load(final File file, final String transtype, final String mode, final String ditaVersion,
+            final Map<String, String> properties) {
+        final StringBuilder configuration = new StringBuilder().append("transtype=").append(transtype).append('\n')
+                .append("mode=").append(mode).append('\n').append("ditaVersion=").append(ditaVersion).append('\n');
+        if (properties != null) {
+            new TreeMap<>(properties).forEach((k, v) -> configuration.append(k).append('=').append(v).append('\n'));
+        }
+        // the filtering is part of the configuration: a DITAVAL change must render the maps again
+        final String filters = properties == null ? null : properties.get("args.filter");
+        if (filters != null) {
+            for (final String filter : filters.split(File.pathSeparator)) {
+                final File ditaval = new File(filter.trim());
+                String hash;
+                try {
+                    hash = ditaval.isFile() ? Distributions.sha256(ditaval) : "missing";
+                } catch (final IOException e) {
+                    hash = "unreadable";
+                }
+                configuration.append("ditaval:").append(filter.trim()).append('=').append(hash).append('\n');
+            }
+        }
+        final BuildState state = new BuildState(file, configuration.toString());
+        if (file.isFile()) {
+            final Properties stored = new Properties();
+            try (final InputStream stream = Files.newInputStream(file.toPath())) {
+                stored.load(stream);
+            } catch (final IOException e) {
+                // corrupted state, render everything again
+                return state;
+            }
+            stored.stringPropertyNames().forEach(k -> state.fingerprints.put(k, stored.getProperty(k)));
+        }
+        return state;
+    }
+
+    public String fingerprint(final File map) throws IOException {
+        return fingerprint(map, MapDependencies.collect(map));
+    }
+
+    public String fingerprint(final File map, final Map<File, byte[]> dependencies) {
+        final Path base = map.getAbsoluteFile().getParentFile().toPath();
+        final MessageDigest digest = MapDependencies.newDigest();
+        digest.update(configuration.getBytes(UTF_8));
+        dependencies.forEach((file, hash) -> {
+            digest.update(base.relativize(file.toPath()).toString().replace(File.separatorChar, '/').getBytes(UTF_8));
+            digest.update((byte) 0);
+            digest.update(hash);
+        });
+        return toHex(digest.digest());
+    }
+
+    // outputs: the files the last rendering of the map published, null when they are not tracked (the output
+    // directory of the map must then at least not be empty)
+    public boolean isUpToDate(final String map, final String fingerprint, final File output,
+            final Collection<File> outputs) {
+        if (!fingerprint.equals(fingerprints.get(map))) {
+            return false;
+        }
+        if (outputs != null) {
+            return !outputs.isEmpty() && outputs.stream().allMatch(File::isFile);
+        }
+        final String[] children = output.list();
+        return children != null && children.length > 0;
+    }
+
+    public void update(final String map, final String fingerprint) {
+        fingerprints.put(map, fingerprint);
+    }
+
+    public void remove(final String map) {
+        fingerprints.remove(map);
+    }
+
+    // forgets the maps which don't exist anymore
+    public void retain(final Collection<String> maps) {
+        fingerprints.keySet().retainAll(maps);
+    }
+
+    public void store() throws IOException {
+        final Properties properties = new Properties();
+        properties.putAll(fingerprints);
+        file.getParentFile().mkdirs();
+        final File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (final OutputStream stream = Files.newOutputStream(tmp.toPath())) {
+            properties.store(stream, "dita-maven-plugin build state");
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    static String toHex(final byte[] bytes) {
+        final StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+}
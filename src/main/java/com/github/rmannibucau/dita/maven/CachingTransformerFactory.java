@@ -0,0 +1,375 @@
+package com.github.rmannibucau.dita.maven;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.transform.ErrorListener;
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.TransformerFactoryConfigurationError;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TemplatesHandler;
+import javax.xml.transform.sax.TransformerHandler;
+
+import org.xml.sax.XMLFilter;
+
+import lombok.RequiredArgsConstructor;
+
+// JAXP TransformerFactory sharing compiled stylesheets between processors and runs, it wraps the factory the DITA-OT
+// classloader would have used (saxon). it is only visible from the DITA-OT classloader (META-INF/services entry served
+// by scope()), the JVM wide JAXP configuration is not touched so other plugins keep their own factory.
+public class CachingTransformerFactory extends SAXTransformerFactory {
+
+    private static final String SERVICE = "META-INF/services/" + TransformerFactory.class.getName();
+
+    private static final Map<String, CompletableFuture<Compiled>> CACHE = new LinkedHashMap<String, CompletableFuture<Compiled>>(16, .75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, CompletableFuture<Compiled>> eldest) {
+            if (size() > maxSize) {
+                EVICTIONS.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private static final AtomicLong HITS = new AtomicLong();
+
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private static final AtomicLong EVICTIONS = new AtomicLong();
+
+    private static int maxSize;
+
+    private static int installations;
+
+    private final SAXTransformerFactory delegate;
+
+    private final Map<String, Object> attributes = new TreeMap<>();
+
+    public CachingTransformerFactory() {
+        delegate = newDelegate();
+    }
+
+    // parent of the DITA-OT classloader: JAXP lookups done with this classloader find this factory first
+    public static synchronized ClassLoader scope(final ClassLoader parent, final int size) {
+        maxSize = size;
+        installations++;
+        final URL service;
+        try {
+            service = new URL(null, "dita-jaxp:" + SERVICE, new URLStreamHandler() {
+
+                @Override
+                protected URLConnection openConnection(final URL url) {
+                    return new URLConnection(url) {
+
+                        @Override
+                        public void connect() {
+                            // no-op
+                        }
+
+                        @Override
+                        public InputStream getInputStream() {
+                            return new ByteArrayInputStream(CachingTransformerFactory.class.getName().getBytes(UTF_8));
+                        }
+                    };
+                }
+            });
+        } catch (final MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+        return new ClassLoader(parent) {
+
+            @Override
+            public URL getResource(final String name) {
+                return SERVICE.equals(name) ? service : super.getResource(name);
+            }
+
+            @Override
+            public Enumeration<URL> getResources(final String name) throws IOException {
+                if (!SERVICE.equals(name)) {
+                    return super.getResources(name);
+                }
+                final List<URL> urls = new ArrayList<>();
+                urls.add(service);
+                urls.addAll(Collections.list(super.getResources(name)));
+                return Collections.enumeration(urls);
+            }
+        };
+    }
+
+    public static synchronized void uninstall() {
+        if (--installations == 0) {
+            synchronized (CACHE) { // templates hold the distribution classloader
+                CACHE.clear();
+            }
+        }
+    }
+
+    public static String stats() {
+        final int size;
+        synchronized (CACHE) {
+            size = CACHE.size();
+        }
+        return "XSLT templates cache: " + HITS.get() + " hits, " + MISSES.get() + " misses, " + EVICTIONS.get()
+                + " evictions, " + size + "/" + maxSize + " entries";
+    }
+
+    @Override
+    public Templates newTemplates(final Source source) throws TransformerConfigurationException {
+        final String key = key(source);
+        if (key == null) {
+            return delegate.newTemplates(source);
+        }
+        while (true) {
+            final CompletableFuture<Compiled> future;
+            final boolean compile;
+            synchronized (CACHE) {
+                final CompletableFuture<Compiled> existing = CACHE.get(key);
+                if (existing == null) {
+                    future = new CompletableFuture<>();
+                    CACHE.put(key, future);
+                    compile = true;
+                } else {
+                    future = existing;
+                    compile = false;
+                }
+            }
+            if (compile) {
+                MISSES.incrementAndGet();
+                try {
+                    final Compiled compiled = compile(source);
+                    future.complete(compiled);
+                    return compiled.templates;
+                } catch (final TransformerConfigurationException | RuntimeException e) {
+                    synchronized (CACHE) {
+                        CACHE.remove(key, future);
+                    }
+                    future.completeExceptionally(e);
+                    throw e;
+                }
+            }
+            final Compiled compiled;
+            try {
+                compiled = future.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TransformerConfigurationException(e);
+            } catch (final ExecutionException e) { // concurrent compilation failed, let this caller report it too
+                return delegate.newTemplates(source);
+            }
+            if (compiled.isCurrent()) {
+                HITS.incrementAndGet();
+                return compiled.templates;
+            }
+            synchronized (CACHE) { // the stylesheet or one of its imports changed
+                CACHE.remove(key, future);
+            }
+        }
+    }
+
+    // records the stylesheets imported or included while compiling to invalidate the entry when one changes
+    private Compiled compile(final Source source) throws TransformerConfigurationException {
+        final Map<File, Long> files = new HashMap<>();
+        track(files, source.getSystemId());
+        final URIResolver resolver = delegate.getURIResolver();
+        delegate.setURIResolver((href, base) -> {
+            final Source resolved = resolver == null ? null : resolver.resolve(href, base);
+            if (resolved != null && resolved.getSystemId() != null) {
+                track(files, resolved.getSystemId());
+            } else {
+                try {
+                    track(files, base == null ? href : URI.create(base).resolve(href).toString());
+                } catch (final IllegalArgumentException e) {
+                    files.put(new File(href), -1L); // can't be checked, never reused
+                }
+            }
+            return resolved;
+        });
+        try {
+            return new Compiled(delegate.newTemplates(source), files);
+        } finally {
+            delegate.setURIResolver(resolver);
+        }
+    }
+
+    private static void track(final Map<File, Long> files, final String systemId) {
+        if (systemId == null || !systemId.startsWith("file:")) { // jar: resources of the distribution don't change
+            return;
+        }
+        try {
+            final File file = new File(URI.create(systemId));
+            files.put(file, file.lastModified());
+        } catch (final IllegalArgumentException e) {
+            files.put(new File(systemId), -1L);
+        }
+    }
+
+    @Override
+    public Transformer newTransformer(final Source source) throws TransformerConfigurationException {
+        return newTemplates(source).newTransformer();
+    }
+
+    @Override
+    public Transformer newTransformer() throws TransformerConfigurationException {
+        return delegate.newTransformer();
+    }
+
+    @Override
+    public TransformerHandler newTransformerHandler(final Source source) throws TransformerConfigurationException {
+        return delegate.newTransformerHandler(newTemplates(source));
+    }
+
+    @Override
+    public TransformerHandler newTransformerHandler(final Templates templates) throws TransformerConfigurationException {
+        return delegate.newTransformerHandler(templates);
+    }
+
+    @Override
+    public TransformerHandler newTransformerHandler() throws TransformerConfigurationException {
+        return delegate.newTransformerHandler();
+    }
+
+    @Override
+    public TemplatesHandler newTemplatesHandler() throws TransformerConfigurationException {
+        return delegate.newTemplatesHandler();
+    }
+
+    @Override
+    public XMLFilter newXMLFilter(final Source source) throws TransformerConfigurationException {
+        return delegate.newXMLFilter(newTemplates(source));
+    }
+
+    @Override
+    public XMLFilter newXMLFilter(final Templates templates) throws TransformerConfigurationException {
+        return delegate.newXMLFilter(templates);
+    }
+
+    @Override
+    public Source getAssociatedStylesheet(final Source source, final String media, final String title, final String charset)
+            throws TransformerConfigurationException {
+        return delegate.getAssociatedStylesheet(source, media, title, charset);
+    }
+
+    @Override
+    public void setURIResolver(final URIResolver resolver) {
+        delegate.setURIResolver(resolver);
+    }
+
+    @Override
+    public URIResolver getURIResolver() {
+        return delegate.getURIResolver();
+    }
+
+    @Override
+    public void setFeature(final String name, final boolean value) throws TransformerConfigurationException {
+        delegate.setFeature(name, value);
+        attributes.put("feature:" + name, value);
+    }
+
+    @Override
+    public boolean getFeature(final String name) {
+        return delegate.getFeature(name);
+    }
+
+    @Override
+    public void setAttribute(final String name, final Object value) {
+        delegate.setAttribute(name, value);
+        attributes.put(name, value);
+    }
+
+    @Override
+    public Object getAttribute(final String name) {
+        return delegate.getAttribute(name);
+    }
+
+    @Override
+    public void setErrorListener(final ErrorListener listener) {
+        delegate.setErrorListener(listener);
+    }
+
+    @Override
+    public ErrorListener getErrorListener() {
+        return delegate.getErrorListener();
+    }
+
+    // only stylesheets we can identify and check for updates are cached
+    private String key(final Source source) {
+        if (maxSize <= 0) {
+            return null;
+        }
+        final String systemId = source.getSystemId();
+        if (systemId == null || !systemId.startsWith("file:")) {
+            return null;
+        }
+        return delegate.getClass().getName() + '@' + System.identityHashCode(delegate.getClass()) + '|' + systemId + '|'
+                + (delegate.getURIResolver() == null ? "" : delegate.getURIResolver().getClass().getName()) + '|' + attributes;
+    }
+
+    // the first factory registered after this one (saxon for DITA-OT)
+    private static SAXTransformerFactory newDelegate() {
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        String implementation = null;
+        try {
+            for (final URL url : Collections.list(loader.getResources(SERVICE))) {
+                try (final BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), UTF_8))) {
+                    implementation = reader.lines().map(l -> l.replaceAll("#.*", "").trim()).filter(l -> !l.isEmpty())
+                            .filter(l -> !CachingTransformerFactory.class.getName().equals(l)).findFirst().orElse(null);
+                }
+                if (implementation != null) {
+                    break;
+                }
+            }
+        } catch (final IOException e) {
+            // use the JVM default
+        }
+        if (implementation == null) {
+            implementation = "com.sun.org.apache.xalan.internal.xsltc.trax.TransformerFactoryImpl";
+        }
+        try {
+            return SAXTransformerFactory.class.cast(TransformerFactory.newInstance(implementation, loader));
+        } catch (final RuntimeException | TransformerFactoryConfigurationError e) {
+            throw new IllegalStateException("Can't create " + implementation, e);
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class Compiled {
+
+        private final Templates templates;
+
+        // the stylesheet and its imports/includes with their last modified date
+        private final Map<File, Long> files;
+
+        private boolean isCurrent() {
+            return files.entrySet().stream().allMatch(e -> e.getValue() >= 0 && e.getKey().lastModified() == e.getValue());
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.github.rmannibucau.dita.maven;
+
+import static java.util.stream.Collectors.joining;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import java.util.zip.ZipFile;
+
+import org.apache.maven.plugin.logging.Log;
+
+import lombok.RequiredArgsConstructor;
+
+// downloads the distribution in <target>.part, by byte ranges fetched in parallel when the server supports it.
+// the completed ranges are recorded in <target>.part.properties so an interrupted download resumes where it stopped
+// (as long as the remote file didn't change), the target only appears once its content is verified.
+@RequiredArgsConstructor
+public class DistributionDownloader {
+
+    private static final int MIN_CHUNK = 1024 * 1024;
+
+    private static final int ATTEMPTS = 3;
+
+    private static final int CONNECT_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(30);
+
+    private static final int READ_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(60);
+
+    private final int connections;
+
+    private final Log log;
+
+    // sha256: expected checksum, null to only check the archive can be read
+    public void download(final URL url, final File target, final String sha256) throws IOException {
+        final File part = new File(target.getParentFile(), target.getName() + ".part");
+        final File state = new File(target.getParentFile(), target.getName() + ".part.properties");
+        target.getParentFile().mkdirs();
+
+        final Remote remote = head(url);
+        if (remote.length > 0 && remote.ranges && connections > 0) {
+            downloadRanges(remote, part, state);
+        } else {
+            downloadStream(remote, part, state);
+        }
+        try {
+            verify(part, sha256);
+        } catch (final IOException e) { // corrupted, don't resume from it
+            Files.deleteIfExists(part.toPath());
+            Files.deleteIfExists(state.toPath());
+            throw e;
+        }
+        Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(state.toPath());
+    }
+
+    public static void verify(final File zip, final String sha256) throws IOException {
+        if (sha256 != null && !sha256.trim().isEmpty()) {
+            final String actual = Distributions.sha256(zip);
+            if (!actual.equalsIgnoreCase(sha256.trim())) {
+                throw new IOException("Invalid checksum for " + zip + ", expected " + sha256 + " but got " + actual);
+            }
+            return;
+        }
+        try (final ZipFile archive = new ZipFile(zip)) { // at least a complete archive (central directory is at the end)
+            if (!archive.entries().hasMoreElements()) {
+                throw new IOException("Empty archive " + zip);
+            }
+        }
+    }
+
+    private void downloadRanges(final Remote remote, final File part, final File stateFile) throws IOException {
+        final long chunk = Math.max(MIN_CHUNK, remote.length / (connections * 4L));
+        final int chunks = (int) ((remote.length + chunk - 1) / chunk);
+        final Properties state = loadState(stateFile);
+        final BitSet done = new BitSet(chunks);
+        if (part.isFile() && part.length() == remote.length && !remote.validator.isEmpty()
+                && remote.requested.toExternalForm().equals(state.getProperty("url"))
+                && Long.toString(remote.length).equals(state.getProperty("length"))
+                && Long.toString(chunk).equals(state.getProperty("chunk"))
+                && remote.validator.equals(state.getProperty("validator"))) {
+            final String completed = state.getProperty("done", "");
+            for (final String index : completed.split(",")) {
+                if (!index.isEmpty()) {
+                    done.set(Integer.parseInt(index));
+                }
+            }
+            if (!done.isEmpty()) {
+                log.info("Resuming download of " + remote.requested + " (" + done.cardinality() + "/" + chunks + " parts done)");
+            }
+        } else {
+            Files.deleteIfExists(part.toPath());
+            state.clear();
+            state.setProperty("url", remote.requested.toExternalForm());
+            state.setProperty("length", Long.toString(remote.length));
+            state.setProperty("chunk", Long.toString(chunk));
+            state.setProperty("validator", remote.validator);
+        }
+
+        final AtomicLong downloaded = new AtomicLong(done.cardinality() * chunk);
+        final Progress progress = new Progress(remote.requested, remote.length, downloaded);
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(connections, chunks), r -> {
+            final Thread thread = new Thread(r, "dita-download");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (final RandomAccessFile file = new RandomAccessFile(part, "rw")) {
+            file.setLength(remote.length);
+            final FileChannel channel = file.getChannel();
+            final List<Future<?>> results = new ArrayList<>();
+            IntStream.range(0, chunks).filter(i -> !done.get(i)).forEach(i -> results.add(executor.submit(() -> {
+                final long from = i * chunk;
+                final long to = Math.min(remote.length, from + chunk) - 1;
+                fetchRange(remote.url, channel, from, to, downloaded, progress);
+                synchronized (done) {
+                    done.set(i);
+                    state.setProperty("done", done.stream().mapToObj(Integer::toString).collect(joining(",")));
+                    storeState(stateFile, state);
+                }
+                return null;
+            })));
+            for (final Future<?> result : results) {
+                result.get();
+            }
+            channel.force(true);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Download of " + remote.requested + " interrupted", e);
+        } catch (final ExecutionException e) {
+            throw IOException.class.isInstance(e.getCause()) ? IOException.class.cast(e.getCause())
+                    : new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void fetchRange(final URL url, final FileChannel channel, final long from, final long to,
+            final AtomicLong downloaded, final Progress progress) throws IOException {
+        IOException error = null;
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+            long position = from;
+            try {
+                final HttpURLConnection connection = open(url);
+                connection.setRequestProperty("Range", "bytes=" + from + '-' + to);
+                if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                    throw new IOException("Range request to " + url + " answered " + connection.getResponseCode());
+                }
+                try (final InputStream stream = connection.getInputStream()) {
+                    final byte[] buffer = new byte[65536];
+                    int read;
+                    while (position <= to && (read = stream.read(buffer, 0, (int) Math.min(buffer.length, to - position + 1))) >= 0) {
+                        final ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+                        while (bytes.hasRemaining()) {
+                            position += channel.write(bytes, position);
+                        }
+                        progress.update(downloaded.addAndGet(read));
+                    }
+                }
+                if (position <= to) {
+                    throw new IOException("Incomplete range " + from + '-' + to + " from " + url);
+                }
+                return;
+            } catch (final IOException e) {
+                downloaded.addAndGet(from - position); // the range is fetched again
+                error = e;
+                sleep(attempt);
+            }
+        }
+        throw error;
+    }
+
+    // servers without range support: a single stream, resumed with a range when the part was downloaded the same way
+    // from the same remote file (a part preallocated by downloadRanges() has the full length but holes)
+    private void downloadStream(final Remote remote, final File part, final File stateFile) throws IOException {
+        final Properties state = loadState(stateFile);
+        final boolean resumable = remote.ranges && !remote.validator.isEmpty() && part.isFile()
+                && "stream".equals(state.getProperty("mode"))
+                && remote.requested.toExternalForm().equals(state.getProperty("url"))
+                && Long.toString(remote.length).equals(state.getProperty("length"))
+                && remote.validator.equals(state.getProperty("validator"))
+                && (remote.length < 0 || part.length() <= remote.length);
+        if (resumable && part.length() == remote.length) {
+            return; // complete, verified by the caller
+        }
+        final long existing = resumable ? part.length() : 0;
+        if (!resumable) {
+            Files.deleteIfExists(part.toPath());
+            state.clear();
+            state.setProperty("mode", "stream");
+            state.setProperty("url", remote.requested.toExternalForm());
+            state.setProperty("length", Long.toString(remote.length));
+            state.setProperty("validator", remote.validator);
+            storeState(stateFile, state);
+        }
+        final HttpURLConnection connection = open(remote.url);
+        if (existing > 0) {
+            connection.setRequestProperty("Range", "bytes=" + existing + '-');
+            connection.setRequestProperty("If-Range", remote.validator); // the whole file if it changed meanwhile
+            log.info("Resuming download of " + remote.requested + " from " + existing + " bytes");
+        }
+        final int status = connection.getResponseCode();
+        final String range = connection.getHeaderField("Content-Range");
+        final boolean append = existing > 0 && status == HttpURLConnection.HTTP_PARTIAL && range != null
+                && range.trim().startsWith("bytes " + existing + '-');
+        if (!append && status != HttpURLConnection.HTTP_OK) { // can't be resumed, start again next time
+            connection.disconnect();
+            Files.deleteIfExists(part.toPath());
+            Files.deleteIfExists(stateFile.toPath());
+            throw new IOException("Can't download " + remote.requested + ": HTTP " + status);
+        }
+        final AtomicLong downloaded = new AtomicLong(append ? existing : 0);
+        final Progress progress = new Progress(remote.requested, remote.length, downloaded);
+        try (final InputStream stream = connection.getInputStream();
+                final OutputStream out = new FileOutputStream(part, append)) {
+            final byte[] buffer = new byte[65536];
+            int read;
+            while ((read = stream.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+                progress.update(downloaded.addAndGet(read));
+            }
+        }
+    }
+
+    private Remote head(final URL url) throws IOException {
+        final HttpURLConnection connection = open(url);
+        connection.setRequestMethod("HEAD");
+        final int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            connection.disconnect();
+            return new Remote(url, url, -1, false, ""); // some servers don't support HEAD, let the GET fail if it is really missing
+        }
+        final String etag = connection.getHeaderField("ETag");
+        final String lastModified = connection.getHeaderField("Last-Modified");
+        final String acceptRanges = connection.getHeaderField("Accept-Ranges");
+        final Remote remote = new Remote(url, connection.getURL(), connection.getContentLengthLong(),
+                acceptRanges != null && acceptRanges.toLowerCase(Locale.ROOT).contains("bytes"),
+                etag != null ? etag : (lastModified != null ? lastModified : ""));
+        connection.disconnect();
+        return remote;
+    }
+
+    private static HttpURLConnection open(final URL url) throws IOException {
+        final URLConnection connection = url.openConnection();
+        if (!HttpURLConnection.class.isInstance(connection)) {
+            throw new IOException("Unsupported download url " + url);
+        }
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        return HttpURLConnection.class.cast(connection);
+    }
+
+    private static Properties loadState(final File file) {
+        final Properties properties = new Properties();
+        if (file.isFile()) {
+            try (final InputStream stream = Files.newInputStream(file.toPath())) {
+                properties.load(stream);
+            } catch (final IOException e) {
+                // restart the download
+            }
+        }
+        return properties;
+    }
+
+    private static void storeState(final File file, final Properties state) throws IOException {
+        final File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (final OutputStream stream = Files.newOutputStream(tmp.toPath())) {
+            state.store(stream, "dita-maven-plugin download state");
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void sleep(final int attempt) throws IOException {
+        try {
+            Thread.sleep(500L << attempt);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Download interrupted", e);
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class Remote {
+
+        // the configured url, identifies the download in the state file
+        private final URL requested;
+
+        // after redirections, only valid for this run (signed CDN urls change for each request)
+        private final URL url;
+
+        private final long length;
+
+        private final boolean ranges;
+
+        // ETag or Last-Modified, detects a remote file change between two attempts
+        private final String validator;
+    }
+
+    // logs every 10%
+    @RequiredArgsConstructor
+    private class Progress {
+
+        private final URL url;
+
+        private final long length;
+
+        private final AtomicLong downloaded;
+
+        private int logged = -1;
+
+        private synchronized void update(final long current) {
+            if (length <= 0) {
+                return;
+            }
+            final int percent = (int) (current * 10 / length) * 10;
+            if (percent > logged) {
+                logged = percent;
+                log.info("Downloading " + url + ": " + percent + "% (" + (current >> 20) + "/" + (length >> 20) + "MB)");
+            }
+        }
+    }
+}
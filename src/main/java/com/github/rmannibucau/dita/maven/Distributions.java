@@ -0,0 +1,230 @@
+package com.github.rmannibucau.dita.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public final class Distributions {
+
+    private static final String MARKER = ".dita-distribution.properties";
+
+    private static final ConcurrentMap<String, Object> STORE_LOCKS = new ConcurrentHashMap<>();
+
+    private static final ConcurrentMap<String, String> CHECKSUMS = new ConcurrentHashMap<>();
+
+    private Distributions() {
+        // no-op
+    }
+
+    // an extraction is reusable only if it completed (marker written last) for the same archive
+    public static boolean isExtracted(final File destination) {
+        final File marker = new File(destination, MARKER);
+        if (!marker.isFile()) {
+            return false;
+        }
+        final Properties properties = new Properties();
+        try (final InputStream stream = Files.newInputStream(marker.toPath())) {
+            properties.load(stream);
+        } catch (final IOException e) {
+            return false;
+        }
+        final File archive = new File(properties.getProperty("archive", ""));
+        if (!archive.isFile()) { // archive was cleaned, the extraction is complete so keep it
+            return true;
+        }
+        if (Long.toString(archive.length()).equals(properties.getProperty("size"))
+                && Long.toString(archive.lastModified()).equals(properties.getProperty("lastModified"))) {
+            return true;
+        }
+        try {
+            return sha256(archive).equals(properties.getProperty("sha256"));
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    // sha256 of the archive an extraction comes from, null when unknown
+    public static String checksum(final File destination) {
+        final File marker = new File(destination, MARKER);
+        if (!marker.isFile()) {
+            return null;
+        }
+        final Properties properties = new Properties();
+        try (final InputStream stream = Files.newInputStream(marker.toPath())) {
+            properties.load(stream);
+        } catch (final IOException e) {
+            return null;
+        }
+        return properties.getProperty("sha256");
+    }
+
+    // store/<sha256 of the zip>, extracted once for all builds, file locks coordinate concurrent builds
+    public static File extractToStore(final File zip, final File store) throws IOException {
+        final String checksum = CHECKSUMS.computeIfAbsent(zip.getAbsolutePath() + '|' + zip.length() + '|' + zip.lastModified(), k -> {
+            try {
+                return sha256(zip);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        final File target = new File(store, checksum);
+        if (isExtracted(target)) {
+            return target;
+        }
+        // FileLock is per process, threads of the same build (mvn -T) are serialized before
+        synchronized (STORE_LOCKS.computeIfAbsent(target.getAbsolutePath(), k -> new Object())) {
+            store.mkdirs();
+            try (final RandomAccessFile lockFile = new RandomAccessFile(new File(store, checksum + ".lock"), "rw");
+                    final FileChannel channel = lockFile.getChannel();
+                    final FileLock lock = channel.lock()) {
+                if (!isExtracted(target)) {
+                    extract(zip, target, true);
+                }
+            }
+        }
+        return target;
+    }
+
+    public static void extract(final File zip, final File destination, final boolean noparent) throws IOException {
+        final String sha256 = sha256(zip);
+        final Path target = destination.getAbsoluteFile().toPath().normalize();
+        final Path work = target.resolveSibling(target.getFileName() + ".extracting");
+        delete(work);
+        Files.createDirectories(work);
+        try (final ZipFile archive = new ZipFile(zip)) {
+            final List<ZipEntry> files = new ArrayList<>();
+            final Set<Path> directories = new HashSet<>();
+            final Enumeration<? extends ZipEntry> entries = archive.entries();
+            while (entries.hasMoreElements()) {
+                final ZipEntry entry = entries.nextElement();
+                final Path path = resolve(work, entry.getName(), noparent);
+                if (path == null) {
+                    continue;
+                }
+                if (entry.isDirectory()) {
+                    directories.add(path);
+                } else {
+                    directories.add(path.getParent());
+                    files.add(entry);
+                }
+            }
+            for (final Path directory : directories) {
+                Files.createDirectories(directory);
+            }
+            // ZipFile supports concurrent readers, inflating is the costly part so parallelize it
+            files.parallelStream().forEach(entry -> {
+                try (final InputStream stream = archive.getInputStream(entry)) {
+                    Files.copy(stream, resolve(work, entry.getName(), noparent), StandardCopyOption.REPLACE_EXISTING);
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        final Properties properties = new Properties();
+        properties.setProperty("sha256", sha256);
+        properties.setProperty("archive", zip.getAbsolutePath());
+        properties.setProperty("size", Long.toString(zip.length()));
+        properties.setProperty("lastModified", Long.toString(zip.lastModified()));
+        try (final OutputStream stream = Files.newOutputStream(work.resolve(MARKER))) {
+            properties.store(stream, "dita distribution extraction");
+        }
+        delete(target);
+        Files.move(work, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static String sha256(final File file) throws IOException {
+        final MessageDigest digest = MapDependencies.newDigest();
+        try (final InputStream stream = Files.newInputStream(file.toPath())) {
+            final byte[] buffer = new byte[65536];
+            int read;
+            while ((read = stream.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return BuildState.toHex(digest.digest());
+    }
+
+    static void delete(final Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path dir, final IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static Path resolve(final Path root, final String name, final boolean noparent) {
+        String path = name;
+        if (noparent) {
+            final int slash = path.indexOf('/');
+            if (slash < 0) {
+                return null;
+            }
+            path = path.substring(slash + 1);
+        }
+        if (path.isEmpty()) {
+            return null;
+        }
+        final Path resolved = root.resolve(path).normalize();
+        if (!resolved.startsWith(root)) {
+            throw new IllegalStateException("Invalid entry " + name);
+        }
+        return resolved;
+    }
+
+    public static URL[] findClassLoaderUrls(final File distribution) {
+        final File config = new File(distribution, "config");
+        final File lib = new File(distribution, "lib");
+        if (!config.isDirectory() || !lib.isDirectory()) {
+            throw new IllegalStateException("No config or lib folder in " + distribution);
+        }
+        return Stream.concat(Stream.of(config, lib),
+                Stream.of(Objects.requireNonNull(lib.listFiles((dir, name) -> name.endsWith(".jar"))))).map(f -> {
+                    try {
+                        return f.toURI().toURL();
+                    } catch (final MalformedURLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }).toArray(URL[]::new);
+    }
+}
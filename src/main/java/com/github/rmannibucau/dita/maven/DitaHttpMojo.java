@@ -1,11 +1,31 @@
 package com.github.rmannibucau.dita.maven;
 
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyMap;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Scanner;
-import java.util.concurrent.Semaphore;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterRegistration;
+import javax.servlet.ServletRegistration;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -19,6 +39,27 @@ public class DitaHttpMojo extends DitaRenderMojo {
     @Parameter(property = "dita.port", defaultValue = "8080")
     private int port;
 
+    // re-render the maps impacted by a source change
+    @Parameter(property = "dita.watch", defaultValue = "true")
+    private boolean watch;
+
+    // quiet period (ms) before rendering a burst of changes (editor saves, git checkout...)
+    @Parameter(property = "dita.watchDebounce", defaultValue = "300")
+    private long watchDebounce;
+
+    // push the changed output files to the open pages which reload themselves when impacted
+    @Parameter(property = "dita.liveReload", defaultValue = "true")
+    private boolean liveReload;
+
+    // MB of output files kept in memory (with their gzip variant), 0 to always read them from the disk
+    @Parameter(property = "dita.httpCacheSize", defaultValue = "64")
+    private long httpCacheSize;
+
+    // map -> files it pulls (including itself), used to find what to re-render for a changed file
+    private final Map<Path, Set<Path>> index = new ConcurrentHashMap<>();
+
+    private final RenderCoordinator coordinator = new RenderCoordinator();
+
     @Override
     public void execute() {
         outputDir.mkdirs(); // ensure it exists before starting the server
@@ -31,40 +72,110 @@ public class DitaHttpMojo extends DitaRenderMojo {
             properties.put("user.csspath", "http://localhost:" + port + "/");
         }
 
+        final Path output = outputDir.getAbsoluteFile().toPath().normalize();
+        final LiveReload reload = liveReload ? new LiveReload() : null;
+        final StaticContentCache cache = new StaticContentCache(httpCacheSize * 1024 * 1024,
+                liveReload ? LiveReload::inject : null);
+
         // start rendering thread
         final AtomicBoolean running = new AtomicBoolean(true);
-        final Semaphore renderSemaphore = new Semaphore(1);
+        coordinator.request(null);
         final Thread renderingThread = new Thread(() -> {
-            while (running.get()) {
-                try {
-                    renderSemaphore.acquire();
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-                if (running.get()) {
+            try {
+                RenderCoordinator.Job job;
+                while ((job = coordinator.next()) != null) {
+                    final Collection<File> maps = job.getMaps();
+                    final Map<Path, Long> before = reload == null ? null : snapshot(output);
                     try {
-                        super.execute();
+                        render(maps);
                     } catch (MojoExecutionException | MojoFailureException e) {
                         getLog().error(e.getMessage(), e);
+                    } finally {
+                        coordinator.done(job);
+                    }
+                    if (reload != null) { // the cache checks the file dates itself, invalidating only frees the memory earlier
+                        final Collection<Path> changed = changes(before, snapshot(output));
+                        cache.invalidate(changed);
+                        reload.changed(changed.stream()
+                                .map(file -> '/' + output.relativize(file).toString().replace(File.separatorChar, '/'))
+                                .collect(toList()));
+                    }
+                    if (watch) {
+                        index(maps);
                     }
                 }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         });
         renderingThread.setName("dita-rendering-thread");
         renderingThread.start();
 
+        final SourceWatcher watcher;
+        final Thread watchingThread;
+        if (watch) {
+            try {
+                watcher = new SourceWatcher(ditaDir.getAbsoluteFile().toPath().normalize(),
+                        asList(outputDir.getAbsoluteFile().toPath().normalize(),
+                                ditaTempDir.getAbsoluteFile().toPath().normalize()));
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+            watchingThread = new Thread(() -> {
+                while (running.get()) {
+                    final Set<Path> changes;
+                    try {
+                        changes = watcher.awaitChanges(watchDebounce);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    if (changes == null) { // lost events
+                        coordinator.request(null);
+                    } else if (!changes.isEmpty()) {
+                        final Collection<File> affected = affected(changes);
+                        if (!affected.isEmpty()) {
+                            getLog().info("Changes detected, rendering " + affected.size() + " map(s)");
+                            coordinator.request(affected);
+                        }
+                    }
+                }
+            });
+            watchingThread.setName("dita-watching-thread");
+            watchingThread.setDaemon(true);
+            watchingThread.start();
+        } else {
+            watcher = null;
+            watchingThread = null;
+        }
+
         // start http server
         final Meecrowave.Builder builder = new Meecrowave.Builder();
         builder.setUseLog4j2JulLogManager(false);
         builder.setLoggingGlobalSetup(false);
         builder.setUseShutdownHook(false);
+        // the default servlet still answers what the filter doesn't serve (missing files, other methods): tomcat's
+        // resource cache would keep outdated entries between renders, the filter has its own revalidated cache
         builder.setWebResourceCached(false);
         builder.setHttpPort(port);
         builder.setTempDir(new File(ditaTempDir, "http-server").getAbsolutePath());
         try (final Meecrowave meecrowave = new Meecrowave(builder)) {
             meecrowave.start();
-            meecrowave.deployClasspath(new Meecrowave.DeploymentMeta("", outputDir, ctx -> {}));
+            meecrowave.deployClasspath(new Meecrowave.DeploymentMeta("", outputDir,
+                    ctx -> ctx.addServletContainerInitializer((classes, servletContext) -> {
+                        final FilterRegistration.Dynamic filter = servletContext.addFilter("dita-static",
+                                new StaticContentFilter(output, cache));
+                        filter.setAsyncSupported(true);
+                        filter.addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST), false, "/*");
+                        if (reload != null) {
+                            final ServletRegistration.Dynamic servlet = servletContext.addServlet("dita-live-reload",
+                                    reload);
+                            servlet.setAsyncSupported(true);
+                            servlet.addMapping(LiveReload.PATH);
+                        }
+                        servletContext.addServlet("dita-status", new StatusServlet(coordinator::status))
+                                .addMapping(StatusServlet.PATH);
+                    }, null)));
 
             final Scanner scanner = new Scanner(System.in);
             String command;
@@ -73,12 +184,26 @@ public class DitaHttpMojo extends DitaRenderMojo {
                     break;
                 }
                 if ("reload".equalsIgnoreCase(command) || "r".equalsIgnoreCase(command)) {
-                    renderSemaphore.release();
+                    coordinator.request(null);
+                } else if ("status".equalsIgnoreCase(command)) {
+                    getLog().info(coordinator.status());
                 }
             }
         } finally {
             running.set(false);
-            renderSemaphore.release();
+            if (reload != null) {
+                reload.close();
+            }
+            getLog().debug(cache.stats());
+            if (watcher != null) {
+                try {
+                    watcher.close();
+                } catch (final IOException e) {
+                    getLog().debug(e.getMessage(), e);
+                }
+                watchingThread.interrupt();
+            }
+            coordinator.close(); // pre-empts the running render
             try {
                 renderingThread.join(TimeUnit.MINUTES.toMillis(1));
             } catch (final InterruptedException e) {
@@ -86,4 +211,88 @@ public class DitaHttpMojo extends DitaRenderMojo {
             }
         }
     }
+
+    @Override
+    protected boolean isRenderCancelled() {
+        return coordinator.isPreempted();
+    }
+
+    @Override
+    protected void onMapEnd(final File map, final MapTiming timing) {
+        coordinator.onMapEnd(map, timing.getStatus());
+    }
+
+    @Override
+    protected boolean isPackagingEnabled() {
+        return false;
+    }
+
+    // maps pulling one of the changed files plus the maps created since the last render
+    private Collection<File> affected(final Set<Path> changes) {
+        final Set<File> affected = new HashSet<>();
+        boolean unknown = false;
+        for (final Path change : changes) {
+            boolean used = false;
+            for (final Map.Entry<Path, Set<Path>> dependencies : index.entrySet()) {
+                if (dependencies.getValue().contains(change)) {
+                    affected.add(dependencies.getKey().toFile());
+                    used = true;
+                }
+            }
+            unknown |= !used;
+        }
+        if (unknown) {
+            findMaps().stream().filter(map -> !index.containsKey(map.toPath())).forEach(affected::add);
+        }
+        return affected;
+    }
+
+    // maps: the rendered maps, null to rebuild the whole index
+    private void index(final Collection<File> maps) {
+        final Collection<File> toIndex;
+        if (maps == null) {
+            toIndex = findMaps();
+            index.clear();
+        } else {
+            toIndex = maps;
+        }
+        for (final File map : toIndex) {
+            final Path key = map.toPath();
+            if (!map.isFile()) { // deleted
+                index.remove(key);
+                continue;
+            }
+            try {
+                final Set<Path> dependencies = new HashSet<>();
+                MapDependencies.collect(map, scans).keySet().forEach(file -> dependencies.add(file.toPath().normalize()));
+                index.put(key, dependencies);
+            } catch (final IOException e) { // treated as a new map on its next change
+                index.remove(key);
+            }
+        }
+    }
+
+    // output file -> last modified/size fingerprint
+    private static Map<Path, Long> snapshot(final Path output) {
+        if (!Files.isDirectory(output)) {
+            return emptyMap();
+        }
+        try (final Stream<Path> files = Files.walk(output)) {
+            return files.filter(Files::isRegularFile)
+                    .collect(toMap(identity(), file -> file.toFile().lastModified() * 31 + file.toFile().length()));
+        } catch (final IOException | UncheckedIOException e) { // concurrent deletion, everything is considered changed
+            return emptyMap();
+        }
+    }
+
+    private static Collection<Path> changes(final Map<Path, Long> before, final Map<Path, Long> after) {
+        final Set<Path> changes = new HashSet<>(before.keySet());
+        changes.removeAll(after.keySet()); // deleted
+        after.forEach((file, fingerprint) -> {
+            if (!fingerprint.equals(before.get(file))) {
+                changes.add(file);
+            }
+        });
+        return changes;
+    }
 }
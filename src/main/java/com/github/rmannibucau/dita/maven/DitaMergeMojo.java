@@ -0,0 +1,130 @@
+package com.github.rmannibucau.dita.maven;
+
+import static java.util.stream.Collectors.toList;
+import static org.apache.maven.plugins.annotations.LifecyclePhase.PROCESS_SOURCES;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+// combines the outputs of dita:render shards (shardIndex/shardCount) into a single output directory
+@Mojo(defaultPhase = PROCESS_SOURCES, name = "merge")
+public class DitaMergeMojo extends AbstractMojo {
+
+    @Parameter(property = "dita.shardDirectories", required = true)
+    private List<File> shardDirectories;
+
+    @Parameter(property = "dita.outputDir", defaultValue = "${project.build.directory}/dita/output")
+    private File outputDir;
+
+    @Parameter(property = "dita.failOnConflict", defaultValue = "true")
+    private boolean failOnConflict;
+
+    // merged durations, can be reused as shardCosts by the next sharded build
+    @Parameter(property = "dita.shardCostsOutput", defaultValue = "${project.build.directory}/dita/temp/dita-render-history.properties")
+    private File shardCostsOutput;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        // target path -> shard file to copy, nothing is written before every manifest is validated
+        final Map<String, Path> merged = new TreeMap<>();
+        final Map<String, String> hashes = new HashMap<>();
+        final Map<String, File> origins = new HashMap<>();
+        final Collection<String> conflicts = new ArrayList<>();
+        final Collection<Integer> indices = new TreeSet<>();
+        // map -> shard it was assigned to, and the maps a shard actually rendered
+        final Map<String, String> assignment = new TreeMap<>();
+        final Collection<String> done = new HashSet<>();
+        final RenderHistory history = RenderHistory.load(shardCostsOutput);
+        final Path root = outputDir.toPath().toAbsolutePath().normalize();
+        int count = -1;
+        try {
+            for (final File shardDir : shardDirectories) {
+                final Properties manifest = Shards.readManifest(shardDir);
+                final int shardCount = Integer.parseInt(manifest.getProperty("shard.count", "-1"));
+                if (count > 0 && count != shardCount) {
+                    throw new MojoExecutionException(shardDir + " was rendered with " + shardCount + " shards, expected " + count);
+                }
+                count = shardCount;
+                if (!indices.add(Integer.parseInt(manifest.getProperty("shard.index", "-1")))) {
+                    throw new MojoExecutionException(shardDir + " is a duplicated shard " + manifest.getProperty("shard.index"));
+                }
+                assignment.putAll(Shards.assignment(manifest));
+                done.addAll(Shards.done(manifest));
+                Shards.durations(manifest).forEach((map, duration) -> history.getDurations().put(map, Long.parseLong(duration)));
+
+                final Path base = shardDir.toPath().toAbsolutePath().normalize();
+                for (final Map.Entry<String, String> file : Shards.files(manifest).entrySet()) {
+                    final Path source = base.resolve(file.getKey()).normalize();
+                    final Path target = root.resolve(file.getKey()).normalize();
+                    if (!source.startsWith(base) || source.equals(base) || !target.startsWith(root) || target.equals(root)) {
+                        throw new MojoExecutionException("Invalid path " + file.getKey() + " in the manifest of " + shardDir);
+                    }
+                    final String key = root.relativize(target).toString().replace(File.separatorChar, '/');
+                    final String existing = hashes.putIfAbsent(key, file.getValue());
+                    if (existing != null) {
+                        if (!existing.equals(file.getValue())) {
+                            conflicts.add(key + " (" + origins.get(key) + " and " + shardDir + ")");
+                        }
+                        continue;
+                    }
+                    if (!Files.isRegularFile(source)) {
+                        throw new MojoExecutionException("Missing " + source + " listed in the manifest of " + shardDir);
+                    }
+                    origins.put(key, shardDir);
+                    merged.put(key, source);
+                }
+            }
+        } catch (final IOException | IllegalArgumentException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+        if (count > 0 && indices.size() != count) {
+            getLog().warn("Merged " + indices.size() + " shards out of " + count + ": " + indices);
+        }
+        final Collection<String> missing = assignment.entrySet().stream().filter(e -> !done.contains(e.getKey()))
+                .map(e -> e.getKey() + " (shard " + e.getValue() + ")").collect(toList());
+        if (!missing.isEmpty()) {
+            throw new MojoFailureException("Maps not rendered by any shard:\n  -" + String.join("\n  -", missing));
+        }
+        if (!conflicts.isEmpty()) {
+            final String message = "Conflicting files between shards:\n  -" + String.join("\n  -", conflicts);
+            if (failOnConflict) {
+                throw new MojoFailureException(message);
+            }
+            getLog().warn(message);
+        }
+
+        try {
+            for (final Map.Entry<String, Path> file : merged.entrySet()) {
+                final Path target = root.resolve(file.getKey());
+                Files.createDirectories(target.getParent());
+                Files.copy(file.getValue(), target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (final IOException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+        try {
+            history.store();
+        } catch (final IOException e) {
+            getLog().warn("Can't store merged render durations: " + e.getMessage(), e);
+        }
+        getLog().info("Merged " + merged.size() + " files from " + shardDirectories.size() + " shards in " + outputDir);
+    }
+}
@@ -0,0 +1,138 @@
+package com.github.rmannibucau.dita.maven;
+
+import static java.lang.invoke.MethodType.methodType;
+import static java.util.stream.Collectors.joining;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// resolves once per distribution classloader the DITA-OT API used by the plugin
+@RequiredArgsConstructor
+public class DitaProcessorAdapter {
+
+    @Getter
+    private final ClassLoader loader;
+
+    private final Map<String, Object> modes;
+
+    private final MethodHandle newFactory;
+
+    private final MethodHandle setBaseTempDir;
+
+    private final MethodHandle newProcessor;
+
+    private final MethodHandle cleanOnFailure;
+
+    private final MethodHandle createDebugLog;
+
+    private final MethodHandle setProperties;
+
+    private final MethodHandle setLogger;
+
+    private final MethodHandle setMode;
+
+    private final MethodHandle setInput;
+
+    private final MethodHandle setOutputDir;
+
+    private final MethodHandle run;
+
+    public static DitaProcessorAdapter of(final ClassLoader loader, final String ditaVersion) {
+        final Class<?> factory = load(loader, "org.dita.dost.ProcessorFactory", ditaVersion);
+        final Class<?> processor = load(loader, "org.dita.dost.Processor", ditaVersion);
+        final Class<?> mode = load(loader, "org.dita.dost.util.Configuration$Mode", ditaVersion);
+        final Map<String, Object> modes = new HashMap<>();
+        Stream.of(mode.getEnumConstants()).forEach(m -> modes.put(Enum.class.cast(m).name(), m));
+        return new DitaProcessorAdapter(loader, modes,
+                find(ditaVersion, factory, "newInstance", methodType(Object.class, File.class), File.class),
+                find(ditaVersion, factory, "setBaseTempDir", methodType(void.class, Object.class, File.class), File.class),
+                find(ditaVersion, factory, "newProcessor", methodType(Object.class, Object.class, String.class), String.class),
+                find(ditaVersion, processor, "cleanOnFailure", methodType(void.class, Object.class, boolean.class), boolean.class),
+                find(ditaVersion, processor, "createDebugLog", methodType(void.class, Object.class, boolean.class), boolean.class),
+                find(ditaVersion, processor, "setProperties", methodType(void.class, Object.class, Map.class), Map.class),
+                find(ditaVersion, processor, "setLogger", methodType(void.class, Object.class, Logger.class), Logger.class),
+                find(ditaVersion, processor, "setMode", methodType(void.class, Object.class, Object.class), mode),
+                find(ditaVersion, processor, "setInput", methodType(void.class, Object.class, File.class), File.class),
+                find(ditaVersion, processor, "setOutputDir", methodType(void.class, Object.class, File.class), File.class),
+                find(ditaVersion, processor, "run", methodType(void.class, Object.class)));
+    }
+
+    public Object mode(final String name) {
+        final Object value = modes.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException(
+                    "Unknown mode '" + name + "', available: " + modes.keySet().stream().sorted().collect(joining(", ")));
+        }
+        return value;
+    }
+
+    public Object newFactory(final File ditaDir) {
+        try {
+            return (Object) newFactory.invokeExact(ditaDir);
+        } catch (final Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void setBaseTempDir(final Object factory, final File tempDir) {
+        try {
+            setBaseTempDir.invokeExact(factory, tempDir);
+        } catch (final Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Object newProcessor(final Object factory, final String transtype, final boolean cleanOnFailure,
+            final boolean createDebugLog, final Map<String, String> properties, final Logger logger, final Object mode) {
+        try {
+            final Object processor = (Object) newProcessor.invokeExact(factory, transtype);
+            this.cleanOnFailure.invokeExact(processor, cleanOnFailure);
+            this.createDebugLog.invokeExact(processor, createDebugLog);
+            setProperties.invokeExact(processor, properties);
+            setLogger.invokeExact(processor, logger);
+            setMode.invokeExact(processor, mode);
+            return processor;
+        } catch (final Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void run(final Object processor, final File input, final File output) throws InvocationTargetException {
+        try {
+            setInput.invokeExact(processor, input);
+            setOutputDir.invokeExact(processor, output);
+            run.invokeExact(processor);
+        } catch (final Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    private static Class<?> load(final ClassLoader loader, final String name, final String ditaVersion) {
+        try {
+            return loader.loadClass(name);
+        } catch (final ClassNotFoundException e) {
+            throw new IllegalStateException("DITA-OT " + ditaVersion + " does not provide " + name, e);
+        }
+    }
+
+    private static MethodHandle find(final String ditaVersion, final Class<?> type, final String name,
+            final MethodType adapted, final Class<?>... parameters) {
+        try {
+            return MethodHandles.publicLookup().unreflect(type.getMethod(name, parameters)).asType(adapted);
+        } catch (final NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException("DITA-OT " + ditaVersion + " does not provide " + type.getName() + "#" + name
+                    + Stream.of(parameters).map(Class::getSimpleName).collect(joining(", ", "(", ")")), e);
+        }
+    }
+}
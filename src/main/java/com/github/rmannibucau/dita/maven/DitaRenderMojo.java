@@ -1,42 +1,50 @@
 package com.github.rmannibucau.dita.maven;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 import static org.apache.maven.plugins.annotations.LifecyclePhase.PROCESS_SOURCES;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLClassLoader;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Semaphore;
-import java.util.regex.Pattern;
-import java.util.stream.Stream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectHelper;
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.artifact.DefaultArtifact;
 import org.eclipse.aether.impl.ArtifactResolver;
@@ -48,7 +56,7 @@ import org.eclipse.aether.resolution.ArtifactResult;
 public class DitaRenderMojo extends AbstractMojo {
 
     @Parameter(property = "dita.ditaDir", defaultValue = "${project.basedir}/src/main/dita")
-    private File ditaDir;
+    protected File ditaDir;
 
     @Parameter(property = "dita.patterns", defaultValue = "dm\\-.*ditamap")
     private Collection<String> patterns;
@@ -56,6 +64,12 @@ public class DitaRenderMojo extends AbstractMojo {
     @Parameter(property = "dita.includes")
     private Collection<String> includes;
 
+    @Parameter(property = "dita.sourceIncludes")
+    private Collection<String> sourceIncludes;
+
+    @Parameter(property = "dita.sourceExcludes")
+    private Collection<String> sourceExcludes;
+
     @Parameter(property = "dita.outputDir", defaultValue = "${project.build.directory}/dita/output")
     protected File outputDir;
 
@@ -68,6 +82,17 @@ public class DitaRenderMojo extends AbstractMojo {
     @Parameter(property = "dita.cleanOnFailure", defaultValue = "true")
     private boolean cleanOnFailure;
 
+    // RAM backed directory (tmpfs like /dev/shm) for the DITA-OT temporary files of in process renderings
+    @Parameter(property = "dita.memoryTempDir")
+    private File memoryTempDir;
+
+    // MB of memoryTempDir the running renderings can use, the others use ditaTempDir
+    @Parameter(property = "dita.memoryTempBudget", defaultValue = "512")
+    private long memoryTempBudget;
+
+    @Parameter(property = "dita.asyncTempCleanup", defaultValue = "true")
+    private boolean asyncTempCleanup;
+
     @Parameter(property = "dita.createDebugLog", defaultValue = "false")
     private boolean createDebugLog;
 
@@ -77,6 +102,24 @@ public class DitaRenderMojo extends AbstractMojo {
     @Parameter(property = "dita.properties")
     protected Map<String, String> properties;
 
+    @Parameter(property = "dita.renderMemory", defaultValue = "256")
+    private long renderMemory;
+
+    @Parameter(property = "dita.heapShare", defaultValue = "0.75")
+    private double heapShare;
+
+    @Parameter(property = "dita.gcThrottle", defaultValue = "true")
+    private boolean gcThrottle;
+
+    @Parameter(property = "dita.factoryPoolMin", defaultValue = "1")
+    private int factoryPoolMin;
+
+    @Parameter(property = "dita.factoryPoolMax", defaultValue = "-1")
+    private int factoryPoolMax;
+
+    @Parameter(property = "dita.factoryIdleTimeout", defaultValue = "300")
+    private long factoryIdleTimeout;
+
     @Parameter(property = "dita.mode", defaultValue = "STRICT")
     private String mode;
 
@@ -89,6 +132,98 @@ public class DitaRenderMojo extends AbstractMojo {
     @Parameter(property = "dita.cacheDistribution", defaultValue = "true")
     private boolean cacheDistribution;
 
+    // expected sha256 of the distribution zip, without it only the archive integrity is checked
+    @Parameter(property = "dita.distributionSha256")
+    private String distributionSha256;
+
+    // directory holding the distribution zips (same name as in the download url), looked up before downloading
+    @Parameter(property = "dita.distributionMirror")
+    private File distributionMirror;
+
+    @Parameter(property = "dita.downloadConnections", defaultValue = "4")
+    private int downloadConnections;
+
+    @Parameter(property = "dita.sharedDistribution", defaultValue = "false")
+    private boolean sharedDistribution;
+
+    @Parameter(property = "dita.distributionStore", defaultValue = "${user.home}/.m2/dita-distributions")
+    private File distributionStore;
+
+    @Parameter(property = "dita.incremental", defaultValue = "true")
+    private boolean incremental;
+
+    // render in a staging directory and only move the changed files to outputDir
+    @Parameter(property = "dita.stagedOutput", defaultValue = "true")
+    private boolean stagedOutput;
+
+    @Parameter(property = "dita.templateCacheSize", defaultValue = "128")
+    private int templateCacheSize;
+
+    @Parameter(property = "dita.daemon", defaultValue = "false")
+    private boolean daemon;
+
+    @Parameter(property = "dita.daemonDirectory", defaultValue = "${user.home}/.dita-maven-plugin/daemons")
+    private File daemonDirectory;
+
+    @Parameter(property = "dita.daemonJvmArgs")
+    private Collection<String> daemonJvmArgs;
+
+    @Parameter(property = "dita.daemonIdleTimeout", defaultValue = "30")
+    private long daemonIdleTimeout;
+
+    @Parameter(property = "dita.forkWorkers", defaultValue = "false")
+    private boolean forkWorkers;
+
+    @Parameter(property = "dita.workerJvmArgs")
+    private Collection<String> workerJvmArgs;
+
+    @Parameter(property = "dita.workerMaxJobs", defaultValue = "100")
+    private int workerMaxJobs;
+
+    @Parameter(property = "dita.failFast", defaultValue = "false")
+    private boolean failFast;
+
+    @Parameter(property = "dita.renderTimeout", defaultValue = "0")
+    private long renderTimeout;
+
+    @Parameter(property = "dita.shardIndex", defaultValue = "0")
+    private int shardIndex;
+
+    @Parameter(property = "dita.shardCount", defaultValue = "1")
+    private int shardCount;
+
+    @Parameter(property = "dita.shardCosts")
+    private File shardCosts;
+
+    @Parameter(property = "dita.asyncLogging", defaultValue = "false")
+    private boolean asyncLogging;
+
+    @Parameter(property = "dita.logBufferSize", defaultValue = "8192")
+    private int logBufferSize;
+
+    @Parameter(property = "dita.logOverflow", defaultValue = "BLOCK")
+    private AsyncLog.OverflowPolicy logOverflow;
+
+    @Parameter(property = "dita.renderReport", defaultValue = "true")
+    private boolean renderReport;
+
+    @Parameter(property = "dita.slowestMaps", defaultValue = "10")
+    private int slowestMaps;
+
+    // zip the output while the maps are rendered and attach it to the project
+    @Parameter(property = "dita.packageOutput", defaultValue = "false")
+    private boolean packageOutput;
+
+    @Parameter(property = "dita.packageClassifier", defaultValue = "site")
+    private String packageClassifier;
+
+    // default: ${project.build.directory}/${project.build.finalName}-${packageClassifier}.zip
+    @Parameter(property = "dita.packageFile")
+    private File packageFile;
+
+    @Parameter(property = "dita.packageCompressionLevel", defaultValue = "6")
+    private int packageCompressionLevel;
+
     @Parameter(defaultValue = "${settings.localRepository}")
     private File localRepository;
 
@@ -98,102 +233,466 @@ public class DitaRenderMojo extends AbstractMojo {
     @Parameter(defaultValue = "${session}", readonly = true)
     private MavenSession session;
 
+    @Parameter(defaultValue = "${project}", readonly = true)
+    private MavenProject project;
+
+    @Component
+    private MavenProjectHelper projectHelper;
+
+    // kept for the whole mojo lifetime, dita:http renders reuse it
+    protected final TopicScanCache scans = new TopicScanCache();
+
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
+        render(null);
+    }
+
+    // only: the maps to render, null for all the maps of ditaDir
+    protected void render(final Collection<File> only) throws MojoExecutionException, MojoFailureException {
+        if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+            throw new MojoExecutionException("Invalid shard " + shardIndex + "/" + shardCount + ", shardIndex must be in [0, shardCount[");
+        }
         final File distribution;
         try {
             distribution = findDistribution();
         } catch (final MalformedURLException e) {
             throw new MojoExecutionException(e.getMessage(), e);
         }
-        doExecute(distribution);
+        doExecute(distribution, only, resolveFilters());
     }
 
-    private void doExecute(final File distribution) throws MojoFailureException {
-        final Collection<Throwable> errors = new ArrayList<>();
-        try (final URLClassLoader loader = new URLClassLoader(findClassLoaderUrls(distribution),
-                Thread.currentThread().getContextClassLoader())) {
+    // checked before each map, the maps not started yet once it returns true are cancelled
+    protected boolean isRenderCancelled() {
+        return false;
+    }
 
-            final ProcessorCache processors = new ProcessorCache(loader, distribution, ditaTempDir, transtype, cleanOnFailure,
-                    createDebugLog, mode, properties, getLog());
+    // renderings which are not part of a build (dita:http) don't produce an artifact
+    protected boolean isPackagingEnabled() {
+        return true;
+    }
 
-            final Path srcPath = ditaDir.toPath();
-            final Collection<Pattern> patterns = (this.patterns == null ? Stream.<Pattern> empty()
-                    : this.patterns.stream().map(Pattern::compile)).collect(toSet());
+    // called from the rendering threads once a map is rendered, up to date, failed or cancelled
+    protected void onMapEnd(final File map, final MapTiming timing) {
+        // no-op
+    }
 
-            final Executor executor = parallelism == 0 ? Runnable::run
-                    : Executors.newFixedThreadPool(parallelism < 0 ? Runtime.getRuntime().availableProcessors() : parallelism);
-            final Semaphore semaphore = new Semaphore(0);
-            long count = 0;
-            try {
-                count = Stream.of(Objects.requireNonNull(ditaDir.listFiles(), "no dita children for " + ditaDir))
-                              .filter(f ->
-                                (includes != null && includes.contains(f.getName()))
-                                || (includes == null && patterns.isEmpty() || patterns.stream().anyMatch(e -> e.matcher(f.getName()).matches())))
-                              .peek(file -> executor.execute(() -> processors.withProcessor(processor -> {
-                                  try {
-                                      final File output = new File(outputDir,
-                                              srcPath.relativize(file.getParentFile().toPath()).toString());
-                                      getLog().info("Processing " + file.getAbsolutePath());
-
-                                      final Class<?> pc = processor.getClass();
-
-                                      pc.getMethod("setInput", File.class).invoke(processor, file.getAbsoluteFile());
-                                      pc.getMethod("setOutputDir", File.class).invoke(processor, output);
-                                      pc.getMethod("run").invoke(processor);
-                                  } catch (final NoSuchMethodException | IllegalAccessException e) {
-                                      throw new IllegalStateException(e);
-                                  } catch (final InvocationTargetException e) {
-                                      errors.add(e.getTargetException());
-                                      throw new IllegalStateException(e.getTargetException());
-                                  } finally {
-                                      getLog().info("Finished processing: " + file);
-                                      semaphore.release();
-                                  }
-                              }))).count();
-            } finally {
-                if (ExecutorService.class.isInstance(executor)) {
-                    final ExecutorService es = ExecutorService.class.cast(executor);
-                    es.shutdown();
+    protected Collection<File> findMaps() {
+        final Path srcPath = ditaDir.getAbsoluteFile().toPath().normalize();
+        final SourceScanner scanner = new SourceScanner(srcPath, patterns, includes, sourceIncludes, sourceExcludes,
+                asList(outputDir.toPath(), ditaTempDir.toPath()), parallelism != 0);
+        final Collection<File> files = new ConcurrentLinkedQueue<>();
+        scanner.scan(files::add);
+        return files;
+    }
+
+    private void doExecute(final File distribution, final Collection<File> only,
+            final Map<String, String> renderProperties) throws MojoFailureException {
+        final int threads = threads();
+        final Log log = asyncLogging ? new AsyncLog(getLog(), logBufferSize, logOverflow) : getLog();
+        final MapRenderer renderer;
+        final DitaRuntime runtime;
+        final TempWorkspace workspace;
+        if (daemon) {
+            runtime = null;
+            workspace = null;
+            renderer = new RenderDaemonClient(
+                    RenderDaemonClient.ensureStarted(daemonDirectory, distribution, ditaVersion, daemonJvmArgs,
+                            templateCacheSize, TimeUnit.MINUTES.toMillis(daemonIdleTimeout), getLog()),
+                    log, ditaTempDir, transtype, cleanOnFailure, createDebugLog, mode, renderProperties);
+        } else if (forkWorkers) {
+            runtime = null;
+            workspace = null;
+            renderer = new ForkedWorkerPool(RenderDaemonClient.javaCommand(workerJvmArgs, templateCacheSize), distribution,
+                    ditaVersion, workerMaxJobs, new File(ditaTempDir, "workers"), log, ditaTempDir, transtype,
+                    cleanOnFailure, createDebugLog, mode, renderProperties);
+        } else {
+            runtime = DitaRuntimeRegistry.of(session).get(distribution, ditaVersion, templateCacheSize,
+                    Thread.currentThread().getContextClassLoader());
+            runtime.getAdapter().mode(mode); // fail fast on a wrong configuration
+            runtime.getFactories().configure(factoryPoolMin, factoryPoolMax < 0 ? Math.max(1, threads) : factoryPoolMax,
+                    TimeUnit.SECONDS.toMillis(factoryIdleTimeout));
+            runtime.getFactories().prewarm().whenComplete((ignored, error) -> { // concurrently with the scan
+                if (error != null) { // the renderings create their factories and report the actual failure
+                    final Throwable cause = error.getCause() != null ? error.getCause() : error;
+                    getLog().warn("Can't prewarm DITA processor factories: " + cause.getMessage(), cause);
+                }
+            });
+            workspace = memoryTempDir == null ? null
+                    : new TempWorkspace(ditaTempDir, memoryTempDir, memoryTempBudget * 1024 * 1024, asyncTempCleanup,
+                            getLog());
+            renderer = new ProcessorCache(runtime, ditaTempDir, transtype, cleanOnFailure, createDebugLog, mode,
+                    renderProperties, log).useWorkspace(workspace);
+        }
+
+        final BuildState state = BuildState.load(new File(ditaTempDir, "dita-build-state.properties"), transtype, mode,
+                ditaVersion, renderProperties);
+        final AtomicLong upToDate = new AtomicLong();
+        final RenderReport report = new RenderReport();
+        // rendered or up to date maps, listed in the shard manifest
+        final Collection<File> done = new ConcurrentLinkedQueue<>();
+        final RenderHistory history = RenderHistory.load(new File(ditaTempDir, "dita-render-history.properties"));
+        final OutputPublisher publisher = stagedOutput ? OutputPublisher.load(outputDir, ditaTempDir) : null;
+        final File zip = packageFile != null ? packageFile : new File(project.getBuild().getDirectory(),
+                project.getBuild().getFinalName() + '-' + packageClassifier + ".zip");
+        final SiteArchive archive;
+        try { // partial renderings don't produce a complete site
+            archive = packageOutput && only == null && isPackagingEnabled()
+                    ? new SiteArchive(zip, packageCompressionLevel) : null;
+        } catch (final IOException e) {
+            throw new MojoFailureException("Can't create " + zip + ": " + e.getMessage(), e);
+        }
+
+        final Path srcPath = ditaDir.getAbsoluteFile().toPath().normalize();
+        final Collection<File> files = findMaps();
+        if (only != null) {
+            files.retainAll(only);
+        }
+
+        // longest maps first (never rendered ones are assumed long) so a big map doesn't start when the others are done
+        final Map<File, Integer> assignment = shardCount > 1 ? shard(srcPath, files) : null;
+        final List<File> candidates = assignment == null ? new ArrayList<>(files) : assignment.entrySet().stream()
+                .filter(e -> e.getValue() == shardIndex).map(Map.Entry::getKey).collect(toList());
+        final List<File> ordered = candidates.stream()
+                .sorted(Comparator.<File> comparingLong(f -> {
+                    final long duration = history.duration(key(srcPath, f));
+                    return duration < 0 ? Long.MAX_VALUE : duration;
+                }).thenComparingLong(File::length).reversed())
+                .collect(toList());
+
+        final AdmissionController admission = daemon || forkWorkers || parallelism == 0 || heapShare <= 0 ? null
+                : new AdmissionController(heapShare, threads, gcThrottle, getLog());
+        // async mode: FIFO so the submission order is respected, idle workers steal the remaining maps
+        final RenderPipeline pipeline = new RenderPipeline(parallelism == 0 ? null
+                : new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true),
+                TimeUnit.SECONDS.toMillis(renderTimeout), failFast);
+        pipeline.cancelWhen(this::isRenderCancelled);
+        // renderings publish under the read lock, the write lock is taken (and kept) before the shared resources are
+        // released so a timed out rendering still running can't use them anymore
+        final ReadWriteLock fence = new ReentrantReadWriteLock();
+        IOException archiveError = null;
+        try {
+            ordered.forEach(file -> {
+                final MapTiming timing = new MapTiming(key(srcPath, file), System.nanoTime());
+                pipeline.submit(timing.getMap(), () -> {
                     try {
-                        semaphore.acquire((int) count);
-                    } catch (final InterruptedException e) {
-                        Thread.currentThread().interrupt();
+                        render(renderer, admission, state, publisher, archive, srcPath, file, timing, upToDate, log,
+                                fence);
+                    } finally {
+                        report.add(timing);
+                        if (timing.getStatus() == MapTiming.Status.RENDERED
+                                || timing.getStatus() == MapTiming.Status.UP_TO_DATE) {
+                            done.add(file);
+                        }
+                        if (timing.getStatus() == MapTiming.Status.RENDERED) {
+                            history.record(timing.getMap(), TimeUnit.NANOSECONDS.toMillis(timing.getTotal()));
+                        }
+                        onMapEnd(file, timing);
                     }
+                }, () -> {
+                    timing.start();
+                    timing.end(MapTiming.Status.CANCELLED);
+                    report.add(timing);
+                    onMapEnd(file, timing);
+                });
+            });
+            pipeline.await();
+        } finally {
+            final int abandoned = pipeline.awaitAbandoned();
+            fence.writeLock().lock();
+            if (abandoned > 0) {
+                getLog().warn(abandoned + " timed out renderings are still running, their outputs are ignored");
+            }
+            pipeline.close();
+            if (AsyncLog.class.isInstance(log)) {
+                AsyncLog.class.cast(log).close();
+            }
+            if (ForkedWorkerPool.class.isInstance(renderer)) {
+                final ForkedWorkerPool workers = ForkedWorkerPool.class.cast(renderer);
+                workers.close();
+                getLog().info(workers.stats());
+            }
+            if (admission != null) {
+                admission.close();
+                getLog().info(admission.stats());
+            }
+            if (workspace != null) {
+                workspace.close();
+                getLog().info(workspace.stats());
+            }
+            if (archive != null) {
+                try {
+                    archive.close(pipeline.getErrors().isEmpty() && pipeline.getCancelled().get() == 0);
+                    getLog().info(archive.stats());
+                } catch (final IOException e) {
+                    archiveError = e;
+                }
+            }
+            if (incremental || admission != null) {
+                getLog().info(scans.stats());
+            }
+            if (runtime != null) {
+                getLog().info(runtime.getFactories().stats());
+                if (templateCacheSize > 0) {
+                    getLog().info(CachingTransformerFactory.stats());
+                }
+            }
+        }
+        if (incremental) {
+            if (only == null) {
+                state.retain(files.stream().map(f -> key(srcPath, f)).collect(toSet()));
+            }
+            try {
+                state.store();
+            } catch (final IOException e) {
+                getLog().warn("Can't store build state: " + e.getMessage(), e);
+            }
+        }
+        try {
+            history.store();
+        } catch (final IOException e) {
+            getLog().warn("Can't store render history: " + e.getMessage(), e);
+        }
+        if (publisher != null) {
+            try {
+                if (only == null) {
+                    publisher.retain(files.stream().map(f -> key(srcPath, f)).collect(toSet()));
+                }
+                publisher.store();
+            } catch (final IOException e) {
+                getLog().warn("Can't store published files index: " + e.getMessage(), e);
+            }
+            getLog().info(publisher.stats());
+        }
+        if (assignment != null) {
+            final Map<String, Long> durations = new TreeMap<>();
+            ordered.stream().map(f -> key(srcPath, f)).filter(history.getDurations()::containsKey)
+                    .forEach(k -> durations.put(k, history.getDurations().get(k)));
+            final Map<String, Integer> maps = new TreeMap<>();
+            assignment.forEach((f, index) -> maps.put(key(srcPath, f), index));
+            try {
+                final Collection<String> published = new TreeSet<>();
+                for (final File file : done) {
+                    published.addAll(publisher != null ? publisher.files(key(srcPath, file))
+                            : Shards.list(outputDir, new File(outputDir, srcPath.relativize(file.getParentFile().toPath()).toString())));
+                }
+                Shards.writeManifest(outputDir, shardIndex, shardCount, maps,
+                        done.stream().map(f -> key(srcPath, f)).collect(toList()), published, durations);
+            } catch (final IOException e) {
+                throw new MojoFailureException("Can't write shard manifest: " + e.getMessage(), e);
+            }
+        }
+        if (renderReport) {
+            try {
+                report.write(ditaTempDir);
+            } catch (final IOException e) {
+                getLog().warn("Can't write render report: " + e.getMessage(), e);
+            }
+        }
+        final List<String> slowest = report.slowest(slowestMaps);
+        if (!slowest.isEmpty()) {
+            getLog().info("Slowest maps:");
+            slowest.forEach(line -> getLog().info(line));
+        }
+        final Collection<Throwable> errors = pipeline.getErrors();
+        final long cancelled = pipeline.getCancelled().get();
+        getLog().info("Rendered " + (ordered.size() - upToDate.get() - cancelled - errors.size()) + " files"
+                + (upToDate.get() > 0 ? " (" + upToDate.get() + " up to date)" : "")
+                + (errors.isEmpty() ? "" : ", " + errors.size() + " failed")
+                + (cancelled > 0 ? ", " + cancelled + " cancelled" : ""));
+        if (!errors.isEmpty()) {
+            final MojoFailureException exception = new MojoFailureException("Some errors occured:\n"
+                    + errors.stream().map(e -> e.getMessage() != null ? e.getMessage()
+                            : e.getCause() != null && e.getCause().getMessage() != null ? e.getCause().getMessage()
+                                    : e.toString())
+                            .collect(joining("\n  -", "  -", "")));
+            errors.forEach(exception::addSuppressed);
+            throw exception;
+        }
+        if (archiveError != null) {
+            throw new MojoFailureException("Can't package " + outputDir + ": " + archiveError.getMessage(), archiveError);
+        }
+        if (archive != null && cancelled == 0) {
+            projectHelper.attachArtifact(project, "zip", packageClassifier, zip);
+        }
+    }
+
+    // costs are the render durations of shardCosts, unknown maps get the average one. without shardCosts the maps
+    // are balanced by size: the local history differs between the nodes and would give inconsistent assignments
+    private Map<File, Integer> shard(final Path srcPath, final Collection<File> files) {
+        final RenderHistory costs = shardCosts == null ? null : RenderHistory.load(shardCosts);
+        final long average = costs == null ? -1
+                : (long) costs.getDurations().values().stream().mapToLong(Long::longValue).average().orElse(-1);
+        final Map<File, Integer> assignment = Shards.assign(new ArrayList<>(files), f -> key(srcPath, f), f -> {
+            if (average < 0) {
+                return f.length();
+            }
+            final long duration = costs.duration(key(srcPath, f));
+            return duration < 0 ? average : duration;
+        }, shardCount);
+        getLog().info("Shard " + shardIndex + "/" + shardCount + " renders "
+                + assignment.values().stream().filter(i -> i == shardIndex).count() + " of " + files.size() + " maps");
+        return assignment;
+    }
+
+    // args.filter paths are relative to the project (DITA-OT would use the working directory, the build state too)
+    private Map<String, String> resolveFilters() throws MojoExecutionException {
+        final String filters = properties == null ? null : properties.get("args.filter");
+        if (filters == null || filters.trim().isEmpty()) {
+            return properties;
+        }
+        final Collection<String> resolved = new ArrayList<>();
+        for (final String filter : filters.split(File.pathSeparator)) {
+            if (filter.trim().isEmpty()) {
+                continue;
+            }
+            File ditaval = new File(filter.trim());
+            if (!ditaval.isAbsolute()) {
+                ditaval = new File(project.getBasedir(), filter.trim());
+            }
+            if (!ditaval.isFile()) {
+                throw new MojoExecutionException("DITAVAL file " + ditaval + " (args.filter) doesn't exist");
+            }
+            resolved.add(ditaval.getAbsolutePath());
+        }
+        final Map<String, String> renderProperties = new HashMap<>(properties);
+        renderProperties.put("args.filter", String.join(File.pathSeparator, resolved));
+        return renderProperties;
+    }
+
+    private int threads() {
+        final int cores = parallelism < 0 ? Runtime.getRuntime().availableProcessors() : parallelism;
+        if (renderMemory <= 0 || daemon || forkWorkers || cores <= 1) { // the daemon and workers have their own heap
+            return cores;
+        }
+        final long byMemory = Math.max(1, Runtime.getRuntime().maxMemory() / (renderMemory * 1024 * 1024));
+        if (byMemory < cores) {
+            getLog().info("Limiting rendering parallelism to " + byMemory + " (heap=" + (Runtime.getRuntime().maxMemory() >> 20)
+                    + "MB, renderMemory=" + renderMemory + "MB)");
+            return (int) byMemory;
+        }
+        return cores;
+    }
+
+    private static String key(final Path srcPath, final File map) {
+        return srcPath.relativize(map.toPath()).toString().replace(File.separatorChar, '/');
+    }
+
+    private void render(final MapRenderer renderer, final AdmissionController admission, final BuildState state,
+            final OutputPublisher publisher, final SiteArchive archive, final Path srcPath, final File file,
+            final MapTiming timing, final AtomicLong upToDate, final Log log, final ReadWriteLock fence)
+            throws InvocationTargetException {
+        timing.start();
+        final String relativeOutput = srcPath.relativize(file.getParentFile().toPath()).toString();
+        final File output = new File(outputDir, relativeOutput);
+        final String key = timing.getMap();
+        final Map<File, byte[]> dependencies = incremental || admission != null ? dependencies(file) : null;
+        final String fingerprint = incremental && dependencies != null ? state.fingerprint(file, dependencies) : null;
+        if (fingerprint != null && state.isUpToDate(key, fingerprint, output, publisher == null ? null
+                : publisher.files(key).stream().map(f -> new File(outputDir, f)).collect(toList()))) {
+            log.info("Skipping " + file.getAbsolutePath() + ", it is up to date");
+            enter(fence, file);
+            try {
+                archive(archive, publisher, key, output, relativeOutput);
+            } finally {
+                fence.readLock().unlock();
+            }
+            upToDate.incrementAndGet();
+            timing.end(MapTiming.Status.UP_TO_DATE);
+            return;
+        }
+        final long estimate = admission == null ? 0 : AdmissionController.estimate(
+                dependencies == null ? singletonMap(file, new byte[0]) : dependencies);
+        if (admission != null) {
+            final long start = System.nanoTime();
+            try {
+                admission.acquire(estimate);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                timing.end(MapTiming.Status.FAILED);
+                throw new IllegalStateException(e);
+            }
+            timing.admitted(System.nanoTime() - start);
+        }
+        MapTiming.Status status = MapTiming.Status.FAILED;
+        File staging = null;
+        try {
+            log.info("Processing " + file.getAbsolutePath());
+            if (publisher != null) {
+                staging = publisher.stage(key);
+            }
+            renderer.render(file.getAbsoluteFile(), staging == null ? output : staging, timing);
+            enter(fence, file);
+            try {
+                if (publisher != null) {
+                    publisher.publish(key, staging, relativeOutput.replace(File.separatorChar, '/'));
+                }
+                archive(archive, publisher, key, output, relativeOutput);
+                status = MapTiming.Status.RENDERED;
+                if (fingerprint != null) {
+                    state.update(key, fingerprint);
                 }
+            } finally {
+                fence.readLock().unlock();
             }
-            getLog().info("Rendered " + count + " files");
-            if (!errors.isEmpty()) {
-                final MojoFailureException exception = new MojoFailureException("Some errors occured:\n"
-                        + errors.stream().map(e -> e.getMessage() == null ? e.getCause().getMessage() : e.getMessage())
-                                .collect(joining("\n  -", "  -", "")));
-                errors.forEach(exception::addSuppressed);
-                throw exception;
+        } catch (final IOException e) {
+            state.remove(key);
+            throw new IllegalStateException("Can't publish " + file + ": " + e.getMessage(), e);
+        } catch (final InvocationTargetException | RuntimeException e) {
+            state.remove(key);
+            throw e;
+        } finally {
+            if (staging != null) {
+                publisher.discard(staging);
+            }
+            if (admission != null) {
+                admission.release(estimate);
+            }
+            timing.end(status);
+            log.info("Finished processing: " + file);
+        }
+    }
+
+    private static void enter(final ReadWriteLock fence, final File map) {
+        if (!fence.readLock().tryLock()) {
+            throw new IllegalStateException("Rendering of " + map + " finished after the build, ignoring it");
+        }
+    }
+
+    // the published files of the map when known, the files of its output directory otherwise
+    private void archive(final SiteArchive archive, final OutputPublisher publisher, final String key,
+            final File output, final String relativeOutput) {
+        if (archive == null) {
+            return;
+        }
+        try {
+            final Collection<String> published = publisher == null ? emptyList() : publisher.files(key);
+            if (published.isEmpty()) {
+                archive.addDirectory(output, relativeOutput.replace(File.separatorChar, '/'));
+            } else {
+                for (final String path : published) {
+                    archive.add(path, new File(outputDir, path));
+                }
             }
         } catch (final IOException e) {
-            throw new IllegalStateException(e);
+            throw new IllegalStateException("Can't package " + output + ": " + e.getMessage(), e);
         }
     }
 
-    private URL[] findClassLoaderUrls(final File distribution) {
-        final File config = new File(distribution, "config");
-        final File lib = new File(distribution, "lib");
-        if (!config.isDirectory() || !lib.isDirectory()) {
-            throw new IllegalStateException("No config or lib folder in " + distribution);
+    private Map<File, byte[]> dependencies(final File map) {
+        try {
+            return MapDependencies.collect(map, scans);
+        } catch (final IOException | RuntimeException e) {
+            getLog().warn("Can't analyze " + map + ", it will be rendered: " + e.getMessage());
+            return null;
         }
-        return Stream.concat(Stream.of(config, lib),
-                Stream.of(Objects.requireNonNull(lib.listFiles((dir, name) -> name.endsWith(".jar"))))).map(f -> {
-                    try {
-                        return f.toURI().toURL();
-                    } catch (final MalformedURLException e) {
-                        throw new IllegalStateException(e);
-                    }
-                }).toArray(URL[]::new);
     }
 
     private File findDistribution() throws MalformedURLException, MojoExecutionException {
         final File downloadOutput = new File(ditaTempDir, "dita_distribution");
-        if (downloadOutput.exists()) {
+        if (sharedDistribution) {
+            return findSharedDistribution(downloadOutput);
+        }
+        if (Distributions.isExtracted(downloadOutput)) {
             return downloadOutput;
         }
         final File zip = findDistributionZip(new URL(ditaDownloadUrl.replace("$version", ditaVersion)), downloadOutput);
@@ -201,8 +700,27 @@ public class DitaRenderMojo extends AbstractMojo {
         return downloadOutput;
     }
 
+    private File findSharedDistribution(final File downloadOutput) throws MalformedURLException, MojoExecutionException {
+        final File reference = new File(ditaTempDir, "dita_distribution.location");
+        try {
+            if (reference.isFile()) {
+                final File distribution = new File(new String(Files.readAllBytes(reference.toPath()), UTF_8).trim());
+                if (Distributions.isExtracted(distribution)) {
+                    return distribution;
+                }
+            }
+            final File zip = findDistributionZip(new URL(ditaDownloadUrl.replace("$version", ditaVersion)), downloadOutput);
+            getLog().info(String.format("Using distribution store '%s' for '%s'", distributionStore.getAbsolutePath(), zip.getAbsolutePath()));
+            final File distribution = Distributions.extractToStore(zip, distributionStore);
+            reference.getParentFile().mkdirs();
+            Files.write(reference.toPath(), distribution.getAbsolutePath().getBytes(UTF_8));
+            return distribution;
+        } catch (final IOException | RuntimeException e) {
+            throw new MojoExecutionException("Can't use distribution store " + distributionStore, e);
+        }
+    }
+
     private File findDistributionZip(final URL url, final File downloadOutput) throws MojoExecutionException {
-        File zip;
         final Artifact artifact = new DefaultArtifact("com.github.rmannibucau.dita.maven", "dita-distribution", "zip",
                 ditaVersion);
         try {
@@ -211,56 +729,96 @@ public class DitaRenderMojo extends AbstractMojo {
             if (artifactResult.isMissing()) {
                 throw new IllegalStateException("Didn't find dita distribution");
             }
-            zip = artifactResult.getArtifact().getFile();
+            final File zip = artifactResult.getArtifact().getFile();
+            if (distributionSha256 != null) {
+                try {
+                    DistributionDownloader.verify(zip, distributionSha256);
+                } catch (final IOException e) {
+                    getLog().warn("Dropping cached distribution: " + e.getMessage());
+                    zip.delete(); // downloaded and cached again
+                    throw new ArtifactResolutionException(singletonList(artifactResult));
+                }
+            }
+            return zip;
         } catch (final ArtifactResolutionException e) {
-            zip = new File(downloadOutput.getParentFile(), downloadOutput.getName() + ".zip");
-            zip.getParentFile().mkdirs();
-            try (final InputStream source = url.openStream()) {
-                Files.copy(source, zip.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            final File zip;
+            try {
+                zip = downloadDistribution(url, downloadOutput);
             } catch (final IOException e1) {
                 throw new MojoExecutionException(e1.getMessage(), e1);
             }
 
+            // only verified archives reach this point so a broken download is never cached
             if (cacheDistribution) {
                 final File localLocation = new File(localRepository,
                         artifact.getGroupId().replace(".", "/") + '/' + artifact.getArtifactId() + '/' + artifact.getVersion()
                                 + '/' + artifact.getArtifactId() + '-' + artifact.getVersion() + '.' + artifact.getExtension());
-                localLocation.getParentFile().mkdirs();
-                if (!localLocation.exists()) {
-                    try {
-                        Files.copy(zip.toPath(), localLocation.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                    } catch (final IOException e1) {
-                        throw new MojoExecutionException(e1.getMessage(), e1);
-                    }
+                try {
+                    copyAtomically(zip, localLocation);
+                } catch (final IOException e1) {
+                    throw new MojoExecutionException(e1.getMessage(), e1);
                 }
             }
+            return zip;
         }
-        return zip;
     }
 
-    private void unzip(final File zipFile, final File destination, final boolean noparent) {
-        getLog().info(String.format("Extracting '%s' to '%s'", zipFile.getAbsolutePath(), destination.getAbsolutePath()));
-        try {
-            final ZipInputStream in = new ZipInputStream(new BufferedInputStream(new FileInputStream(zipFile)));
-            ZipEntry entry;
-            while ((entry = in.getNextEntry()) != null) {
-                String path = entry.getName();
-                if (noparent) {
-                    path = path.replaceFirst("^[^/]+/", "");
+    private File downloadDistribution(final URL url, final File downloadOutput) throws IOException {
+        final String path = url.getPath();
+        final String name = path.substring(path.lastIndexOf('/') + 1);
+        if (distributionMirror != null) {
+            final File mirrored = new File(distributionMirror, name);
+            if (mirrored.isFile()) {
+                try {
+                    DistributionDownloader.verify(mirrored, distributionSha256);
+                    getLog().info(String.format("Using mirrored distribution '%s'", mirrored.getAbsolutePath()));
+                    return mirrored;
+                } catch (final IOException e) {
+                    getLog().warn("Ignoring mirrored distribution " + mirrored + ": " + e.getMessage());
                 }
-                final File file = new File(destination, path);
+            }
+        }
 
-                if (entry.isDirectory()) {
-                    file.mkdirs();
-                    continue;
-                }
+        final File zip = new File(downloadOutput.getParentFile(), downloadOutput.getName() + ".zip");
+        if (zip.isFile()) { // previous build downloaded it but failed later
+            try {
+                DistributionDownloader.verify(zip, distributionSha256);
+                return zip;
+            } catch (final IOException e) {
+                Files.delete(zip.toPath());
+            }
+        }
+        getLog().info(String.format("Downloading '%s'", url));
+        new DistributionDownloader(downloadConnections, getLog()).download(url, zip, distributionSha256);
+        if (distributionMirror != null) {
+            copyAtomically(zip, new File(distributionMirror, name));
+        }
+        return zip;
+    }
 
-                file.getParentFile().mkdirs();
-                Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    private static void copyAtomically(final File source, final File target) throws IOException {
+        if (target.exists()) {
+            return;
+        }
+        target.getParentFile().mkdirs();
+        final File tmp = new File(target.getParentFile(), target.getName() + '.' + UUID.randomUUID() + ".tmp");
+        try {
+            Files.copy(source.toPath(), tmp.toPath());
+            try {
+                Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (final FileAlreadyExistsException e) {
+                // concurrent build cached it
             }
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
 
-            in.close();
-        } catch (final Exception e) {
+    private void unzip(final File zipFile, final File destination, final boolean noparent) {
+        getLog().info(String.format("Extracting '%s' to '%s'", zipFile.getAbsolutePath(), destination.getAbsolutePath()));
+        try {
+            Distributions.extract(zipFile, destination, noparent);
+        } catch (final IOException | RuntimeException e) {
             throw new IllegalStateException("Unable to unzip " + zipFile.getAbsolutePath(), e);
         }
     }
@@ -0,0 +1,94 @@
+package com.github.rmannibucau.dita.maven;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.util.function.Supplier;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// what can be shared by all the renderings of a distribution: classes, resolved API and processor factories
+@RequiredArgsConstructor
+public class DitaRuntime implements Closeable {
+
+    private final URLClassLoader loader;
+
+    @Getter
+    private final DitaProcessorAdapter adapter;
+
+    @Getter
+    private final File distribution;
+
+    private final boolean templateCache;
+
+    @Getter
+    private final ProcessorFactoryPool factories = new ProcessorFactoryPool(this::newFactory);
+
+    public static DitaRuntime create(final File distribution, final String ditaVersion, final int templateCacheSize,
+            final ClassLoader parent) {
+        final URLClassLoader loader = new URLClassLoader(Distributions.findClassLoaderUrls(distribution),
+                templateCacheSize > 0 ? CachingTransformerFactory.scope(parent, templateCacheSize) : parent);
+        final DitaProcessorAdapter adapter;
+        try {
+            adapter = DitaProcessorAdapter.of(loader, ditaVersion);
+        } catch (final RuntimeException e) {
+            try {
+                loader.close();
+            } catch (final IOException ioe) {
+                e.addSuppressed(ioe);
+            }
+            if (templateCacheSize > 0) {
+                CachingTransformerFactory.uninstall();
+            }
+            throw e;
+        }
+        return new DitaRuntime(loader, adapter, distribution, templateCacheSize > 0);
+    }
+
+    public Object borrowFactory(final File tempDir) {
+        final Object factory;
+        try {
+            factory = factories.borrow();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        try {
+            adapter.setBaseTempDir(factory, tempDir);
+        } catch (final RuntimeException e) {
+            factories.release(factory, false);
+            throw e;
+        }
+        return factory;
+    }
+
+    public void releaseFactory(final Object factory, final boolean healthy) {
+        factories.release(factory, healthy);
+    }
+
+    private Object newFactory() {
+        return inContext(() -> adapter.newFactory(distribution));
+    }
+
+    public <T> T inContext(final Supplier<T> supplier) {
+        final Thread thread = Thread.currentThread();
+        final ClassLoader old = thread.getContextClassLoader();
+        thread.setContextClassLoader(loader);
+        try {
+            return supplier.get();
+        } finally {
+            thread.setContextClassLoader(old);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        factories.close();
+        if (templateCache) {
+            CachingTransformerFactory.uninstall();
+        }
+        loader.close();
+    }
+}
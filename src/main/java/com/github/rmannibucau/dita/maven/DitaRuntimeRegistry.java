@@ -0,0 +1,191 @@
+package com.github.rmannibucau.dita.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.eclipse.aether.SessionData;
+
+import lombok.RequiredArgsConstructor;
+
+// keeps one DitaRuntime per distribution and version for the whole maven session (all modules, mvn -T included)
+public class DitaRuntimeRegistry {
+
+    private final Map<String, DitaRuntime> runtimes = new ConcurrentHashMap<>();
+
+    public static DitaRuntimeRegistry of(final MavenSession session) {
+        final SessionData data = session.getRepositorySession().getData();
+        // the class is the key: two versions of the plugin in the same build don't share their runtimes
+        final Object existing = data.get(DitaRuntimeRegistry.class);
+        if (existing != null) {
+            return DitaRuntimeRegistry.class.cast(existing);
+        }
+        final DitaRuntimeRegistry registry = new DitaRuntimeRegistry();
+        if (!data.set(DitaRuntimeRegistry.class, null, registry)) {
+            return DitaRuntimeRegistry.class.cast(data.get(DitaRuntimeRegistry.class));
+        }
+        final MavenExecutionRequest request = session.getRequest();
+        synchronized (request) {
+            request.setExecutionListener(new SessionEndListener(request.getExecutionListener(), registry));
+        }
+        return registry;
+    }
+
+    public DitaRuntime get(final File distribution, final String ditaVersion, final int templateCacheSize,
+            final ClassLoader parent) {
+        // modules extract the distribution in their own target folder, the same archive gives the same runtime
+        final String checksum = Distributions.checksum(distribution);
+        return runtimes.computeIfAbsent((checksum == null ? distribution.getAbsolutePath() : checksum) + '|' + ditaVersion,
+                k -> DitaRuntime.create(distribution, ditaVersion, templateCacheSize, parent));
+    }
+
+    public void close() {
+        final Collection<DitaRuntime> toClose = new ArrayList<>(runtimes.values());
+        runtimes.clear();
+        for (final DitaRuntime runtime : toClose) {
+            try {
+                runtime.close();
+            } catch (final IOException e) {
+                // no-op, session is ending anyway
+            }
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class SessionEndListener implements ExecutionListener {
+
+        private final ExecutionListener delegate;
+
+        private final DitaRuntimeRegistry registry;
+
+        @Override
+        public void sessionEnded(final ExecutionEvent event) {
+            try {
+                if (delegate != null) {
+                    delegate.sessionEnded(event);
+                }
+            } finally {
+                registry.close();
+            }
+        }
+
+        @Override
+        public void projectDiscoveryStarted(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.projectDiscoveryStarted(event);
+            }
+        }
+
+        @Override
+        public void sessionStarted(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.sessionStarted(event);
+            }
+        }
+
+        @Override
+        public void projectSkipped(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.projectSkipped(event);
+            }
+        }
+
+        @Override
+        public void projectStarted(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.projectStarted(event);
+            }
+        }
+
+        @Override
+        public void projectSucceeded(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.projectSucceeded(event);
+            }
+        }
+
+        @Override
+        public void projectFailed(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.projectFailed(event);
+            }
+        }
+
+        @Override
+        public void mojoSkipped(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.mojoSkipped(event);
+            }
+        }
+
+        @Override
+        public void mojoStarted(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.mojoStarted(event);
+            }
+        }
+
+        @Override
+        public void mojoSucceeded(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.mojoSucceeded(event);
+            }
+        }
+
+        @Override
+        public void mojoFailed(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.mojoFailed(event);
+            }
+        }
+
+        @Override
+        public void forkStarted(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.forkStarted(event);
+            }
+        }
+
+        @Override
+        public void forkSucceeded(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.forkSucceeded(event);
+            }
+        }
+
+        @Override
+        public void forkFailed(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.forkFailed(event);
+            }
+        }
+
+        @Override
+        public void forkedProjectStarted(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.forkedProjectStarted(event);
+            }
+        }
+
+        @Override
+        public void forkedProjectSucceeded(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.forkedProjectSucceeded(event);
+            }
+        }
+
+        @Override
+        public void forkedProjectFailed(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.forkedProjectFailed(event);
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.github.rmannibucau.dita.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.plugin.logging.Log;
+
+import lombok.RequiredArgsConstructor;
+
+// renders each map in a forked JVM (own classloader, heap and static state of DITA-OT plugins),
+// workers talk RenderProtocol over stdin/stdout, are reused and recycled after maxJobs renderings
+@RequiredArgsConstructor
+public class ForkedWorkerPool implements MapRenderer, AutoCloseable {
+
+    // java command without the RenderDaemon arguments
+    private final List<String> command;
+
+    private final File distribution;
+
+    private final String ditaVersion;
+
+    private final int maxJobs;
+
+    private final File logDirectory;
+
+    private final Log log;
+
+    private final File tempDir;
+
+    private final String transtype;
+
+    private final boolean cleanOnFailure;
+
+    private final boolean createDebugLog;
+
+    private final String mode;
+
+    private final Map<String, String> properties;
+
+    private final BlockingQueue<Worker> idle = new LinkedBlockingQueue<>();
+
+    private final Collection<Process> processes = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger ids = new AtomicInteger();
+
+    private final AtomicInteger recycled = new AtomicInteger();
+
+    private final AtomicInteger crashed = new AtomicInteger();
+
+    // worker -> rendering thread, a pipe read ignores the interruption (render timeout) so the worker is killed instead
+    private final Map<Worker, Thread> busy = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService watchdog;
+
+    // the caller parallelism bounds the number of workers
+    @Override
+    public void render(final File map, final File output, final MapTiming timing) throws InvocationTargetException {
+        final long start = System.nanoTime();
+        Worker worker = idle.poll();
+        if (worker == null) {
+            worker = start();
+        }
+        timing.borrowed(System.nanoTime() - start);
+        render(worker, map, output, timing);
+    }
+
+    public String stats() {
+        return "Forked workers: " + ids.get() + " started, " + recycled.get() + " recycled, " + crashed.get() + " crashed";
+    }
+
+    private void render(final Worker worker, final File map, final File output, final MapTiming timing)
+            throws InvocationTargetException {
+        final long start = System.nanoTime();
+        boolean healthy = false;
+        busy.put(worker, Thread.currentThread());
+        watchdog();
+        try {
+            RenderProtocol.writeRequest(worker.out, null, new RenderProtocol.RenderRequest(tempDir, transtype, cleanOnFailure,
+                    createDebugLog, mode, properties, log.isDebugEnabled(), map.getAbsoluteFile(), output.getAbsoluteFile()));
+            RenderProtocol.readResponse(worker.in, log);
+            healthy = true;
+        } catch (final RenderProtocol.RemoteRenderException e) {
+            healthy = true;
+            throw new InvocationTargetException(e);
+        } catch (final IOException e) {
+            crashed.incrementAndGet();
+            if (worker.killed) {
+                throw new IllegalStateException("DITA worker #" + worker.id + " was killed, rendering " + map + " was interrupted", e);
+            }
+            throw new IllegalStateException("DITA worker #" + worker.id + " failed rendering " + map + ", see " + worker.logFile, e);
+        } finally {
+            busy.remove(worker);
+            timing.ran(System.nanoTime() - start);
+            if (healthy && !worker.killed && ++worker.jobs < maxJobs) {
+                idle.offer(worker);
+            } else {
+                if (healthy) {
+                    recycled.incrementAndGet();
+                }
+                stop(worker, !healthy);
+            }
+        }
+    }
+
+    private synchronized void watchdog() {
+        if (watchdog != null) {
+            return;
+        }
+        watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "dita-worker-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchdog.scheduleWithFixedDelay(() -> busy.forEach((worker, thread) -> {
+            if (thread.isInterrupted() && !worker.killed) {
+                worker.killed = true;
+                log.debug("Killing DITA worker #" + worker.id + ", its rendering was interrupted");
+                worker.process.destroyForcibly(); // the pending read fails and the worker is handled as crashed
+            }
+        }), 100, 100, TimeUnit.MILLISECONDS);
+    }
+
+    private Worker start() {
+        final int id = ids.incrementAndGet();
+        final List<String> command = new ArrayList<>(this.command);
+        command.add(RenderDaemon.STDIO);
+        command.add(distribution.getAbsolutePath());
+        command.add(ditaVersion);
+        logDirectory.mkdirs();
+        final File logFile = new File(logDirectory, "worker-" + id + ".log");
+        try {
+            final Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.appendTo(logFile)).start();
+            processes.add(process);
+            log.debug("Started DITA worker #" + id + " (logs in " + logFile + ")");
+            return new Worker(id, process, logFile,
+                    new DataOutputStream(new BufferedOutputStream(process.getOutputStream())),
+                    new DataInputStream(new BufferedInputStream(process.getInputStream())));
+        } catch (final IOException e) {
+            throw new IllegalStateException("Can't start a DITA worker", e);
+        }
+    }
+
+    // closing stdin ends the worker loop
+    private void stop(final Worker worker, final boolean kill) {
+        try {
+            worker.out.close();
+        } catch (final IOException e) {
+            // already dead
+        }
+        if (kill) {
+            worker.process.destroyForcibly();
+        }
+        processes.remove(worker.process);
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (watchdog != null) {
+                watchdog.shutdownNow();
+            }
+        }
+        Worker worker;
+        while ((worker = idle.poll()) != null) {
+            stop(worker, false);
+        }
+        for (final Process process : processes) {
+            try {
+                if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                process.destroyForcibly();
+            }
+        }
+        processes.clear();
+    }
+
+    @RequiredArgsConstructor
+    private static class Worker {
+
+        private final int id;
+
+        private final Process process;
+
+        private final File logFile;
+
+        private final DataOutputStream out;
+
+        private final DataInputStream in;
+
+        private int jobs;
+
+        private volatile boolean killed;
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.rmannibucau.dita.maven;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.RequiredArgsConstructor;
+
+// flight recorder events created through jdk.jfr.EventFactory (java 11+) reflectively to stay java 8 compatible,
+// the events are only committed when a recording enables them (-XX:StartFlightRecording)
+final class JfrEvents {
+
+    private static final Type RENDER = Type.create("com.github.rmannibucau.dita.Render", "DITA Map Rendering",
+            new Field(String.class, "map", null), new Field(String.class, "status", null),
+            new Field(long.class, "queue", "NANOSECONDS"), new Field(long.class, "borrow", "NANOSECONDS"),
+            new Field(long.class, "setup", "NANOSECONDS"), new Field(long.class, "run", "NANOSECONDS"),
+            new Field(int.class, "warnings", null), new Field(int.class, "errors", null));
+
+    private static final Type LOG = Type.create("com.github.rmannibucau.dita.Log", "DITA-OT Log",
+            new Field(String.class, "map", null), new Field(String.class, "level", null),
+            new Field(String.class, "message", null));
+
+    private JfrEvents() {
+        // no-op
+    }
+
+    static void render(final MapTiming timing) {
+        if (RENDER != null) {
+            RENDER.commit(timing.getMap(), String.valueOf(timing.getStatus()), timing.getQueue(), timing.getBorrow(),
+                    timing.getSetup(), timing.getRun(), timing.getWarnings().get(), timing.getErrors().get());
+        }
+    }
+
+    static void log(final String map, final String level, final String message) {
+        if (LOG != null) {
+            LOG.commit(map, level, message);
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class Field {
+
+        private final Class<?> type;
+
+        private final String name;
+
+        private final String timespan;
+    }
+
+    @RequiredArgsConstructor
+    private static class Type {
+
+        private final Object factory;
+
+        private final Method newEvent;
+
+        private final Method shouldCommit;
+
+        private final Method set;
+
+        private final Method commit;
+
+        private void commit(final Object... values) {
+            try {
+                final Object event = newEvent.invoke(factory);
+                if (!Boolean.class.cast(shouldCommit.invoke(event))) {
+                    return;
+                }
+                for (int i = 0; i < values.length; i++) {
+                    set.invoke(event, i, values[i]);
+                }
+                commit.invoke(event);
+            } catch (final Exception e) {
+                // monitoring must never break a build
+            }
+        }
+
+        // null when the JVM has no flight recorder API
+        private static Type create(final String name, final String label, final Field... fields) {
+            try {
+                final ClassLoader loader = JfrEvents.class.getClassLoader();
+                final Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement", false, loader);
+                final Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor", false, loader);
+                final Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory", false, loader);
+                final Class<?> event = Class.forName("jdk.jfr.Event", false, loader);
+                final Constructor<?> newAnnotation = annotationElement.getConstructor(Class.class, Object.class);
+                final Constructor<?> newValue = valueDescriptor.getConstructor(Class.class, String.class, List.class);
+
+                final List<Object> annotations = asList(
+                        newAnnotation.newInstance(annotation("jdk.jfr.Name", loader), name),
+                        newAnnotation.newInstance(annotation("jdk.jfr.Label", loader), label),
+                        newAnnotation.newInstance(annotation("jdk.jfr.Category", loader), new String[] { "DITA" }));
+                final List<Object> values = new ArrayList<>();
+                for (final Field field : fields) {
+                    values.add(newValue.newInstance(field.type, field.name, field.timespan == null ? new ArrayList<>()
+                            : singletonList(newAnnotation.newInstance(annotation("jdk.jfr.Timespan", loader), field.timespan))));
+                }
+                final Object factory = eventFactory.getMethod("create", List.class, List.class).invoke(null, annotations, values);
+                return new Type(factory, eventFactory.getMethod("newEvent"), event.getMethod("shouldCommit"),
+                        event.getMethod("set", int.class, Object.class), event.getMethod("commit"));
+            } catch (final Exception | LinkageError e) {
+                return null;
+            }
+        }
+
+        private static Class<? extends Annotation> annotation(final String name, final ClassLoader loader)
+                throws ClassNotFoundException {
+            return Class.forName(name, false, loader).asSubclass(Annotation.class);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.rmannibucau.dita.maven;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.joining;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+// server sent events channel telling the preview tabs which output files a render changed,
+// the injected script reloads a page when it changed or when a resource it may use (css, image...) changed
+public class LiveReload extends HttpServlet {
+
+    public static final String PATH = "/_dita/livereload";
+
+    private static final String SCRIPT = "<script>(function () {"
+            + "var source = new EventSource('" + PATH + "');"
+            + "source.addEventListener('change', function (e) {"
+            + "var page = location.pathname.replace(/\\/$/, '/index.html');"
+            + "var paths = JSON.parse(e.data).paths;"
+            + "for (var i = 0; i < paths.length; i++) {"
+            + "if (paths[i] === page || !/\\.html?$/.test(paths[i])) { location.reload(); return; }"
+            + "}});"
+            + "})();</script>";
+
+    private final Collection<AsyncContext> clients = new CopyOnWriteArrayList<>();
+
+    @Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding(UTF_8.name());
+        response.setHeader("Cache-Control", "no-cache");
+        final AsyncContext client = request.startAsync();
+        client.setTimeout(0);
+        client.addListener(new AsyncListener() {
+
+            @Override
+            public void onComplete(final AsyncEvent event) {
+                clients.remove(client);
+            }
+
+            @Override
+            public void onTimeout(final AsyncEvent event) {
+                clients.remove(client);
+            }
+
+            @Override
+            public void onError(final AsyncEvent event) {
+                clients.remove(client);
+            }
+
+            @Override
+            public void onStartAsync(final AsyncEvent event) {
+                // no-op
+            }
+        });
+        clients.add(client);
+        send(client, "retry: 2000\n\n");
+    }
+
+    // paths are relative to the output directory, starting with a slash
+    public void changed(final Collection<String> paths) {
+        if (paths.isEmpty() || clients.isEmpty()) {
+            return;
+        }
+        final String event = "event: change\ndata: {\"paths\":["
+                + paths.stream().map(p -> '"' + p.replace("\\", "\\\\").replace("\"", "\\\"") + '"').collect(joining(","))
+                + "]}\n\n";
+        clients.forEach(client -> send(client, event));
+    }
+
+    public void close() {
+        clients.forEach(client -> {
+            try {
+                client.complete();
+            } catch (final IllegalStateException e) {
+                // already completed
+            }
+        });
+        clients.clear();
+    }
+
+    // adds the script before the closing body tag, the page encoding is preserved working on bytes
+    public static byte[] inject(final byte[] html) {
+        final String page = new String(html, ISO_8859_1);
+        final int end = page.toLowerCase(Locale.ROOT).lastIndexOf("</body>");
+        final String injected = end < 0 ? page + SCRIPT : page.substring(0, end) + SCRIPT + page.substring(end);
+        return injected.getBytes(ISO_8859_1);
+    }
+
+    private void send(final AsyncContext client, final String data) {
+        try {
+            synchronized (client) {
+                final PrintWriter writer = client.getResponse().getWriter();
+                writer.write(data);
+                writer.flush();
+                if (writer.checkError()) {
+                    throw new IOException("Client disconnected");
+                }
+            }
+        } catch (final IOException | IllegalStateException e) { // disconnected
+            clients.remove(client);
+            try {
+                client.complete();
+            } catch (final IllegalStateException ise) {
+                // already completed
+            }
+        }
+    }
+}
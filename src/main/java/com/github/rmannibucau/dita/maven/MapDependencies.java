@@ -0,0 +1,182 @@
+package com.github.rmannibucau.dita.maven;
+
+import static java.util.Locale.ROOT;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// collects a map and all the local files it pulls (topics, submaps, conref/keydef targets, images)
+public final class MapDependencies {
+
+    private static final String[] REFERENCE_ATTRIBUTES = { "href", "conref", "conrefend" };
+
+    // parsers are not thread safe but reusable after a reset()
+    private static final ThreadLocal<SAXParser> PARSER = ThreadLocal.withInitial(MapDependencies::newParser);
+
+    private MapDependencies() {
+        // no-op
+    }
+
+    // file -> sha-256 of its content, sorted by path to be usable as a stable fingerprint input
+    public static Map<File, byte[]> collect(final File map) throws IOException {
+        return collect(map, null);
+    }
+
+    // scans: shared scan results, null to scan every file
+    public static Map<File, byte[]> collect(final File map, final TopicScanCache scans) throws IOException {
+        final Map<File, byte[]> files = new TreeMap<>();
+        final Deque<File> toVisit = new ArrayDeque<>();
+        toVisit.add(map.getAbsoluteFile());
+        while (!toVisit.isEmpty()) {
+            final File current = toVisit.poll();
+            if (files.containsKey(current) || !current.isFile()) {
+                continue;
+            }
+            final FileScan scan = scans == null ? scan(current) : scans.get(current);
+            files.put(current, scan.getHash());
+            toVisit.addAll(scan.getReferences());
+        }
+        return files;
+    }
+
+    // hashes a file and extracts its local references in a single read
+    public static FileScan scan(final File file) throws IOException {
+        final long lastModified = file.lastModified();
+        final long length = file.length();
+        final List<File> references = new ArrayList<>();
+        final MessageDigest digest = newDigest();
+        try (final InputStream stream = new DigestInputStream(
+                new BufferedInputStream(Files.newInputStream(file.toPath())), digest)) {
+            if (isXml(file)) {
+                try {
+                    final InputSource source = new InputSource(new FilterInputStream(stream) {
+                        @Override
+                        public void close() {
+                            // the parser closes its input, keep it open to finish hashing the file
+                        }
+                    });
+                    source.setSystemId(file.toURI().toString());
+                    final SAXParser parser = PARSER.get();
+                    parser.reset();
+                    parser.parse(source, new ReferenceHandler(file.getParentFile(), references));
+                } catch (final SAXException e) {
+                    // not parseable, still hash it
+                }
+            }
+            final byte[] buffer = new byte[8192];
+            while (stream.read(buffer) >= 0) {
+                // consume remaining bytes to hash the whole file
+            }
+        }
+        return new FileScan(lastModified, length, digest.digest(), references);
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static boolean isXml(final File file) {
+        final String name = file.getName().toLowerCase(ROOT);
+        return name.endsWith(".dita") || name.endsWith(".ditamap") || name.endsWith(".xml");
+    }
+
+    private static SAXParser newParser() {
+        final SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(false);
+        factory.setValidating(false);
+        try {
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+            return factory.newSAXParser();
+        } catch (final ParserConfigurationException | SAXException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class ReferenceHandler extends DefaultHandler {
+
+        private final File base;
+
+        private final Collection<File> references;
+
+        @Override
+        public void startElement(final String uri, final String localName, final String qName, final Attributes attributes) {
+            if ("external".equals(attributes.getValue("scope"))) {
+                return;
+            }
+            for (final String attribute : REFERENCE_ATTRIBUTES) {
+                final String value = attributes.getValue(attribute);
+                if (value == null || value.isEmpty()) {
+                    continue;
+                }
+                final File file = toFile(value);
+                if (file != null) {
+                    references.add(file);
+                }
+            }
+        }
+
+        private File toFile(final String value) {
+            try {
+                final URI uri = new URI(value.replace(" ", "%20"));
+                if (uri.getScheme() != null || uri.getPath() == null || uri.getPath().isEmpty()) {
+                    return null;
+                }
+                return new File(base, uri.getPath()).getAbsoluteFile().toPath().normalize().toFile();
+            } catch (final URISyntaxException e) {
+                return null;
+            }
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class FileScan {
+
+        private final long lastModified;
+
+        private final long length;
+
+        private final byte[] hash;
+
+        private final List<File> references;
+
+        public boolean isCurrent(final File file) {
+            return file.lastModified() == lastModified && file.length() == length;
+        }
+    }
+}
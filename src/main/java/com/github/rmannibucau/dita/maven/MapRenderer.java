@@ -0,0 +1,10 @@
+package com.github.rmannibucau.dita.maven;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+
+public interface MapRenderer {
+
+    // the target exception is the rendering failure, timing gets the phases the renderer can observe
+    void render(File map, File output, MapTiming timing) throws InvocationTargetException;
+}
@@ -0,0 +1,72 @@
+package com.github.rmannibucau.dita.maven;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// phases of the rendering of a map, durations are in nanoseconds
+@Getter
+@RequiredArgsConstructor
+public class MapTiming {
+
+    public enum Status {
+        RENDERED, UP_TO_DATE, FAILED, CANCELLED
+    }
+
+    private final String map;
+
+    private final long submitted;
+
+    private volatile long started;
+
+    private volatile long queue;
+
+    private volatile long borrow;
+
+    private volatile long setup;
+
+    private volatile long run;
+
+    private volatile long total;
+
+    private volatile Status status;
+
+    private final AtomicInteger warnings = new AtomicInteger();
+
+    private final AtomicInteger errors = new AtomicInteger();
+
+    public void start() {
+        started = System.nanoTime();
+        queue = started - submitted;
+    }
+
+    public void admitted(final long duration) {
+        queue += duration;
+    }
+
+    public void borrowed(final long duration) {
+        borrow = duration;
+    }
+
+    public void setUp(final long duration) {
+        setup = duration;
+    }
+
+    public void ran(final long duration) {
+        run = duration;
+    }
+
+    public void end(final Status status) {
+        this.status = status;
+        total = System.nanoTime() - started;
+    }
+
+    public void onWarning() {
+        warnings.incrementAndGet();
+    }
+
+    public void onError() {
+        errors.incrementAndGet();
+    }
+}
@@ -1,9 +1,8 @@
 package com.github.rmannibucau.dita.maven;
 
-import static java.util.Locale.ROOT;
-
 import org.apache.maven.plugin.logging.Log;
 import org.slf4j.helpers.MarkerIgnoringBase;
+import org.slf4j.helpers.FormattingTuple;
 import org.slf4j.helpers.MessageFormatter;
 
 import lombok.RequiredArgsConstructor;
@@ -13,47 +12,95 @@ public class MavenLoggerBridge extends MarkerIgnoringBase {
 
     private final Log log;
 
+    // null when the logs are not bound to a map rendering
+    private final MapTiming timing;
+
+    public MavenLoggerBridge(final Log log) {
+        this(log, null);
+    }
+
     @Override
     public String getName() {
         return MavenLoggerBridge.class.getPackage() + ".dita";
     }
 
-    private void log(final String level, final String message, final Throwable throwable) {
-        if (throwable == null) {
-            switch (level.toLowerCase(ROOT)) {
-            case "trace":
-            case "debug":
-                log.debug(message);
-                break;
-            case "info":
-                log.info(message);
-                break;
-            case "warn":
-                log.warn(message);
-                break;
-            case "error":
-                log.error(message);
-                break;
-            default:
-                throw new IllegalArgumentException(level);
+    private boolean isEnabled(final Level level) {
+        switch (level) {
+        case DEBUG:
+            return log.isDebugEnabled();
+        case INFO:
+            return log.isInfoEnabled();
+        case WARN:
+            return log.isWarnEnabled();
+        default:
+            return log.isErrorEnabled();
+        }
+    }
+
+    // formatting only happens for enabled levels
+    private void format(final Level level, final String format, final Object arg) {
+        if (isEnabled(level)) {
+            final FormattingTuple tuple = MessageFormatter.format(format, arg);
+            log(level, tuple.getMessage(), tuple.getThrowable());
+        }
+    }
+
+    private void format(final Level level, final String format, final Object arg1, final Object arg2) {
+        if (isEnabled(level)) {
+            final FormattingTuple tuple = MessageFormatter.format(format, arg1, arg2);
+            log(level, tuple.getMessage(), tuple.getThrowable());
+        }
+    }
+
+    private void format(final Level level, final String format, final Object... arguments) {
+        if (isEnabled(level)) {
+            final FormattingTuple tuple = MessageFormatter.arrayFormat(format, arguments);
+            log(level, tuple.getMessage(), tuple.getThrowable());
+        }
+    }
+
+    private void log(final Level level, final String message, final Throwable throwable) {
+        if (timing != null) {
+            if (level == Level.WARN) {
+                timing.onWarning();
+                JfrEvents.log(timing.getMap(), level.name(), message);
+            } else if (level == Level.ERROR) {
+                timing.onError();
+                JfrEvents.log(timing.getMap(), level.name(), message);
             }
-        } else {
-            switch (level.toLowerCase(ROOT)) {
-            case "trace":
-            case "debug":
-                log.debug(message, throwable);
-                break;
-            case "info":
-                log.info(message, throwable);
-                break;
-            case "warn":
-                log.warn(message, throwable);
-                break;
-            case "error":
-                log.error(message, throwable);
-                break;
-            default:
-                throw new IllegalArgumentException(level);
+        }
+        if (!isEnabled(level)) {
+            return;
+        }
+        // concurrent renderings interleave their logs, the map makes them readable
+        final String tagged = timing == null ? message : '[' + timing.getMap() + "] " + message;
+        switch (level) {
+        case DEBUG:
+            if (throwable == null) {
+                log.debug(tagged);
+            } else {
+                log.debug(tagged, throwable);
+            }
+            break;
+        case INFO:
+            if (throwable == null) {
+                log.info(tagged);
+            } else {
+                log.info(tagged, throwable);
+            }
+            break;
+        case WARN:
+            if (throwable == null) {
+                log.warn(tagged);
+            } else {
+                log.warn(tagged, throwable);
+            }
+            break;
+        default:
+            if (throwable == null) {
+                log.error(tagged);
+            } else {
+                log.error(tagged, throwable);
             }
         }
     }
@@ -65,27 +112,27 @@ public class MavenLoggerBridge extends MarkerIgnoringBase {
 
     @Override
     public void trace(final String msg) {
-        log("TRACE", msg, null);
+        log(Level.DEBUG, msg, null);
     }
 
     @Override
     public void trace(final String format, final Object arg) {
-        log("TRACE", MessageFormatter.format(format, arg).getMessage(), null);
+        format(Level.DEBUG, format, arg);
     }
 
     @Override
     public void trace(final String format, final Object arg1, final Object arg2) {
-        log("TRACE", MessageFormatter.format(format, arg1, arg1).getMessage(), null);
+        format(Level.DEBUG, format, arg1, arg2);
     }
 
     @Override
     public void trace(final String format, final Object... arguments) {
-        log("TRACE", MessageFormatter.arrayFormat(format, arguments).getMessage(), null);
+        format(Level.DEBUG, format, arguments);
     }
 
     @Override
     public void trace(final String msg, final Throwable throwable) {
-        log("TRACE", msg, throwable);
+        log(Level.DEBUG, msg, throwable);
     }
 
     @Override
@@ -95,27 +142,27 @@ public class MavenLoggerBridge extends MarkerIgnoringBase {
 
     @Override
     public void debug(final String msg) {
-        log("DEBUG", msg, null);
+        log(Level.DEBUG, msg, null);
     }
 
     @Override
     public void debug(final String format, final Object arg) {
-        log("DEBUG", MessageFormatter.format(format, arg).getMessage(), null);
+        format(Level.DEBUG, format, arg);
     }
 
     @Override
     public void debug(final String format, final Object arg1, final Object arg2) {
-        log("DEBUG", MessageFormatter.format(format, arg1, arg1).getMessage(), null);
+        format(Level.DEBUG, format, arg1, arg2);
     }
 
     @Override
     public void debug(final String format, final Object... arguments) {
-        log("DEBUG", MessageFormatter.arrayFormat(format, arguments).getMessage(), null);
+        format(Level.DEBUG, format, arguments);
     }
 
     @Override
     public void debug(final String msg, final Throwable throwable) {
-        log("DEBUG", msg, throwable);
+        log(Level.DEBUG, msg, throwable);
     }
 
     @Override
@@ -125,27 +172,27 @@ public class MavenLoggerBridge extends MarkerIgnoringBase {
 
     @Override
     public void info(final String msg) {
-        log("INFO", msg, null);
+        log(Level.INFO, msg, null);
     }
 
     @Override
     public void info(final String format, final Object arg) {
-        log("INFO", MessageFormatter.format(format, arg).getMessage(), null);
+        format(Level.INFO, format, arg);
     }
 
     @Override
     public void info(final String format, final Object arg1, final Object arg2) {
-        log("INFO", MessageFormatter.format(format, arg1, arg1).getMessage(), null);
+        format(Level.INFO, format, arg1, arg2);
     }
 
     @Override
     public void info(final String format, final Object... arguments) {
-        log("INFO", MessageFormatter.arrayFormat(format, arguments).getMessage(), null);
+        format(Level.INFO, format, arguments);
     }
 
     @Override
     public void info(final String msg, final Throwable throwable) {
-        log("INFO", msg, throwable);
+        log(Level.INFO, msg, throwable);
     }
 
     @Override
@@ -155,27 +202,27 @@ public class MavenLoggerBridge extends MarkerIgnoringBase {
 
     @Override
     public void warn(final String msg) {
-        log("WARN", msg, null);
+        log(Level.WARN, msg, null);
     }
 
     @Override
     public void warn(final String format, final Object arg) {
-        log("WARN", MessageFormatter.format(format, arg).getMessage(), null);
+        format(Level.WARN, format, arg);
     }
 
     @Override
     public void warn(final String format, final Object arg1, final Object arg2) {
-        log("WARN", MessageFormatter.format(format, arg1, arg1).getMessage(), null);
+        format(Level.WARN, format, arg1, arg2);
     }
 
     @Override
     public void warn(final String format, final Object... arguments) {
-        log("WARN", MessageFormatter.arrayFormat(format, arguments).getMessage(), null);
+        format(Level.WARN, format, arguments);
     }
 
     @Override
     public void warn(final String msg, final Throwable throwable) {
-        log("WARN", msg, throwable);
+        log(Level.WARN, msg, throwable);
     }
 
     @Override
@@ -185,26 +232,30 @@ public class MavenLoggerBridge extends MarkerIgnoringBase {
 
     @Override
     public void error(final String msg) {
-        log("ERROR", msg, null);
+        log(Level.ERROR, msg, null);
     }
 
     @Override
     public void error(final String format, final Object arg) {
-        log("ERROR", MessageFormatter.format(format, arg).getMessage(), null);
+        format(Level.ERROR, format, arg);
     }
 
     @Override
     public void error(final String format, final Object arg1, final Object arg2) {
-        log("ERROR", MessageFormatter.format(format, arg1, arg1).getMessage(), null);
+        format(Level.ERROR, format, arg1, arg2);
     }
 
     @Override
     public void error(final String format, final Object... arguments) {
-        log("ERROR", MessageFormatter.arrayFormat(format, arguments).getMessage(), null);
+        format(Level.ERROR, format, arguments);
     }
 
     @Override
     public void error(final String msg, final Throwable throwable) {
-        log("ERROR", msg, throwable);
+        log(Level.ERROR, msg, throwable);
+    }
+
+    private enum Level {
+        DEBUG, INFO, WARN, ERROR
     }
 }
@@ -0,0 +1,215 @@
+package com.github.rmannibucau.dita.maven;
+
+import static java.util.Collections.emptyList;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import lombok.RequiredArgsConstructor;
+
+// maps are rendered in a staging directory then only the files whose content changed are moved to the output
+// directory (one atomic rename per file so a page is never visible half written) and the files a map doesn't
+// produce anymore are deleted. the hash index of the published files avoids to read the output directory again,
+// the size and date of a published file tell if it was modified since (then it is hashed).
+@RequiredArgsConstructor
+public class OutputPublisher {
+
+    private final File outputDir;
+
+    private final File stagingDir;
+
+    private final File indexFile;
+
+    // map -> (published path -> sha256)
+    private final Map<String, Map<String, String>> index = new ConcurrentHashMap<>();
+
+    // published path -> sha256 of the file in the output directory, guarded by this
+    private final Map<String, String> published = new HashMap<>();
+
+    // published path -> last modified date of the file in the output directory when it was published, guarded by this
+    private final Map<String, Long> stamps = new HashMap<>();
+
+    // published path -> number of maps producing it, guarded by this
+    private final Map<String, Integer> owners = new HashMap<>();
+
+    private final AtomicLong written = new AtomicLong();
+
+    private final AtomicLong unchanged = new AtomicLong();
+
+    private final AtomicLong deleted = new AtomicLong();
+
+    public static OutputPublisher load(final File outputDir, final File ditaTempDir) {
+        final OutputPublisher publisher = new OutputPublisher(outputDir, new File(ditaTempDir, "staging"),
+                new File(ditaTempDir, "dita-publish-index.properties"));
+        if (publisher.indexFile.isFile()) {
+            final Properties stored = new Properties();
+            try (final InputStream stream = Files.newInputStream(publisher.indexFile.toPath())) {
+                stored.load(stream);
+            } catch (final IOException e) {
+                // no index, the published files will be compared to the staged ones
+                return publisher;
+            }
+            stored.stringPropertyNames().forEach(k -> {
+                final int sep = k.indexOf('|');
+                if (sep > 0) {
+                    final String path = k.substring(sep + 1);
+                    // <sha256> <last modified>
+                    final String[] value = stored.getProperty(k).split(" ");
+                    publisher.index.computeIfAbsent(k.substring(0, sep), m -> new TreeMap<>()).put(path, value[0]);
+                    publisher.published.put(path, value[0]);
+                    publisher.owners.merge(path, 1, Integer::sum);
+                    if (value.length > 1 && !value[1].isEmpty() && value[1].chars().allMatch(Character::isDigit)) {
+                        publisher.stamps.put(path, Long.parseLong(value[1]));
+                    }
+                }
+            });
+        }
+        return publisher;
+    }
+
+    // an empty directory dedicated to this rendering of the map, a timed out rendering still writing in its own
+    // directory can't mix its files with the next rendering of the same map
+    public File stage(final String map) throws IOException {
+        final int slash = map.lastIndexOf('/');
+        Files.createDirectories(stagingDir.toPath());
+        return Files.createTempDirectory(stagingDir.toPath(),
+                Integer.toHexString(map.hashCode()) + '-' + (slash < 0 ? map : map.substring(slash + 1)) + '-')
+                .toFile();
+    }
+
+    public void discard(final File staging) {
+        try {
+            Distributions.delete(staging.toPath());
+        } catch (final IOException e) {
+            // cleaned up by store()
+        }
+    }
+
+    // prefix: the output directory of the map relative to outputDir ("" for the root)
+    public void publish(final String map, final File staging, final String prefix) throws IOException {
+        final Path base = staging.toPath();
+        final Map<String, String> produced = new TreeMap<>();
+        try (final Stream<Path> files = Files.walk(base)) { // hashing is done outside of the lock
+            for (final Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                final String relative = base.relativize(file).toString().replace(File.separatorChar, '/');
+                produced.put(prefix.isEmpty() ? relative : prefix + '/' + relative, Distributions.sha256(file.toFile()));
+            }
+        }
+        final Path output = outputDir.toPath();
+        synchronized (this) {
+            for (final Map.Entry<String, String> file : produced.entrySet()) {
+                final Path source = base.resolve(file.getKey().substring(prefix.isEmpty() ? 0 : prefix.length() + 1));
+                final Path target = output.resolve(file.getKey());
+                if (isSame(target, source, file.getValue(), published.get(file.getKey()), stamps.get(file.getKey()))) {
+                    unchanged.incrementAndGet();
+                } else {
+                    Files.createDirectories(target.getParent());
+                    try {
+                        Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (final AtomicMoveNotSupportedException e) {
+                        Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    written.incrementAndGet();
+                }
+                published.put(file.getKey(), file.getValue());
+                stamps.put(file.getKey(), Files.getLastModifiedTime(target).toMillis());
+            }
+            final Map<String, String> previous = index.put(map, produced);
+            for (final String file : produced.keySet()) {
+                if (previous == null || !previous.containsKey(file)) {
+                    owners.merge(file, 1, Integer::sum);
+                }
+            }
+            if (previous != null) {
+                for (final String file : previous.keySet()) {
+                    if (!produced.containsKey(file)) {
+                        deleteOrphan(file);
+                    }
+                }
+            }
+        }
+    }
+
+    // drops the outputs of the maps which don't exist anymore
+    public synchronized void retain(final Collection<String> maps) throws IOException {
+        final Iterator<Map.Entry<String, Map<String, String>>> iterator = index.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, Map<String, String>> entry = iterator.next();
+            if (!maps.contains(entry.getKey())) {
+                iterator.remove();
+                for (final String file : entry.getValue().keySet()) {
+                    deleteOrphan(file);
+                }
+            }
+        }
+    }
+
+    public synchronized void store() throws IOException {
+        final Properties properties = new Properties();
+        index.forEach((map, files) -> files.forEach((path, hash) -> {
+            final Long stamp = stamps.get(path);
+            properties.setProperty(map + '|' + path, stamp == null ? hash : hash + ' ' + stamp);
+        }));
+        indexFile.getParentFile().mkdirs();
+        final File tmp = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        try (final OutputStream stream = Files.newOutputStream(tmp.toPath())) {
+            properties.store(stream, "dita-maven-plugin published files");
+        }
+        Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Distributions.delete(stagingDir.toPath());
+    }
+
+    // the files published for this map, relative to outputDir
+    public Collection<String> files(final String map) {
+        final Map<String, String> files = index.get(map);
+        return files == null ? emptyList() : new ArrayList<>(files.keySet());
+    }
+
+    public String stats() {
+        return "Published " + written.get() + " changed files (" + unchanged.get() + " unchanged, " + deleted.get()
+                + " deleted)";
+    }
+
+    // the index is trusted while the published file keeps its size and date, otherwise (first build, lost index,
+    // file modified in place) the published file is hashed to not rewrite it for nothing
+    private static boolean isSame(final Path target, final Path source, final String hash, final String publishedHash,
+            final Long publishedStamp) throws IOException {
+        if (!Files.isRegularFile(target) || Files.size(target) != Files.size(source)) {
+            return false;
+        }
+        if (publishedHash != null && publishedStamp != null
+                && Files.getLastModifiedTime(target).toMillis() == publishedStamp) {
+            return publishedHash.equals(hash);
+        }
+        return hash.equals(Distributions.sha256(target.toFile()));
+    }
+
+    // only if no other map produces it
+    private void deleteOrphan(final String file) throws IOException {
+        final Integer count = owners.merge(file, -1, Integer::sum);
+        if (count == null || count <= 0) {
+            owners.remove(file);
+            published.remove(file);
+            stamps.remove(file);
+            if (Files.deleteIfExists(outputDir.toPath().resolve(file))) {
+                deleted.incrementAndGet();
+            }
+        }
+    }
+}
@@ -1,22 +1,20 @@
 package com.github.rmannibucau.dita.maven;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
-import java.util.function.Supplier;
 
 import org.apache.maven.plugin.logging.Log;
-import org.slf4j.Logger;
 
 import lombok.RequiredArgsConstructor;
 
 @RequiredArgsConstructor
-public class ProcessorCache {
-    private final ClassLoader loader;
-    private final File ditaDir;
+public class ProcessorCache implements MapRenderer {
+    private final DitaRuntime runtime;
     private final File tempDir;
     private final String transtype;
     private final boolean cleanOnFailure;
@@ -24,71 +22,98 @@ public class ProcessorCache {
     private final String mode;
     private final Map<String, String> properties;
     private final Log log;
+    // per job temporary directories, deleted by the workspace instead of DITA-OT (clean.temp=no)
+    private TempWorkspace workspace;
 
-    private final Queue<Object> factories = new ConcurrentLinkedQueue<>();
+    public ProcessorCache useWorkspace(final TempWorkspace workspace) {
+        this.workspace = workspace;
+        return this;
+    }
 
-    public void withProcessor(final Consumer<Object> consumer) {
-        final Object poll = getFactory();
+    @Override
+    public void render(final File map, final File output, final MapTiming timing) throws InvocationTargetException {
+        if (workspace == null) {
+            doRender(tempDir, properties, map, output, timing);
+            return;
+        }
+        final Map<String, String> configured = properties == null ? new HashMap<>() : properties;
+        // an explicit clean.temp=no keeps the temporary files as before
+        final boolean keepTemp = "no".equals(configured.get("clean.temp"));
+        final Map<String, String> jobProperties = new HashMap<>(configured);
+        jobProperties.put("clean.temp", "no");
+        final TempWorkspace.Lease lease = acquire(map);
+        boolean success = false;
+        boolean released = false;
         try {
-            inContext(() -> {
-                try {
-                    final Object processor = poll.getClass().getMethod("newProcessor", String.class).invoke(poll, transtype);
-                    set(processor, "cleanOnFailure", cleanOnFailure, boolean.class);
-                    set(processor, "createDebugLog", createDebugLog, boolean.class);
-                    set(processor, "setProperties", properties, Map.class);
-                    set(processor, "setLogger", new MavenLoggerBridge(log), Logger.class);
-
-                    final Class<?> mode = loader.loadClass("org.dita.dost.util.Configuration$Mode");
-                    set(processor, "setMode", mode.getMethod("valueOf", String.class).invoke(null, this.mode), mode);
-
-                    consumer.accept(processor);
-                } catch (final ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
-                    throw new IllegalStateException(e);
-                } catch (final InvocationTargetException e) {
-                    throw new IllegalStateException(e.getTargetException());
-                }
-                return null;
-            });
+            doRender(lease.getDirectory(), jobProperties, map, output, timing);
+            success = true;
+        } catch (final InvocationTargetException | RuntimeException e) {
+            released = true;
+            if (!workspace.release(lease, keepTemp || !cleanOnFailure)) { // only an overflow is rendered again
+                throw e;
+            }
+            log.warn("Temporary files of " + map.getName() + " exceeded the memory budget, rendering it again on disk");
+            doRender(tempDir, configured, map, output, timing);
         } finally {
-            factories.offer(poll);
+            if (!released) { // success or an Error (StackOverflowError, OutOfMemoryError...), never leak the reservation
+                workspace.release(lease, keepTemp || (!success && !cleanOnFailure));
+            }
         }
     }
 
-    private void set(final Object instance, final String mtd, final Object value, final Class<?> type) {
+    private TempWorkspace.Lease acquire(final File map) {
         try {
-            instance.getClass().getMethod(mtd, type).invoke(instance, value);
-        } catch (final NoSuchMethodException | IllegalAccessException e) {
-            throw new IllegalStateException(e);
-        } catch (final InvocationTargetException e) {
-            throw new IllegalStateException(e.getTargetException());
+            return workspace.acquire(map.getName());
+        } catch (final IOException e) {
+            throw new IllegalStateException("Can't create a temporary directory for " + map, e);
         }
     }
 
-    private Object getFactory() {
-        Object poll = factories.poll();
-        if (poll == null) {
-            poll = inContext(() -> {
-                try {
-                    final Class<?> pf = loader.loadClass("org.dita.dost.ProcessorFactory");
-                    final Object instance = pf.getMethod("newInstance", File.class).invoke(null, ditaDir);
-                    pf.getMethod("setBaseTempDir", File.class).invoke(instance, tempDir);
-                    return instance;
-                } catch (final Exception e) {
-                    throw new IllegalStateException(e);
-                }
-            });
+    private void doRender(final File baseTempDir, final Map<String, String> jobProperties, final File map,
+            final File output, final MapTiming timing) throws InvocationTargetException {
+        final AtomicReference<InvocationTargetException> error = new AtomicReference<>();
+        withProcessor(baseTempDir, jobProperties, timing, processor -> {
+            final long start = System.nanoTime();
+            try {
+                runtime.getAdapter().run(processor, map, output);
+            } catch (final InvocationTargetException e) {
+                error.set(e);
+            } finally {
+                timing.ran(System.nanoTime() - start);
+            }
+        });
+        if (error.get() != null) {
+            throw error.get();
         }
-        return poll;
     }
 
-    private <T> T inContext(final Supplier<T> supplier) {
-        final Thread thread = Thread.currentThread();
-        final ClassLoader old = thread.getContextClassLoader();
-        thread.setContextClassLoader(loader);
+    public void withProcessor(final Consumer<Object> consumer) {
+        withProcessor(tempDir, properties, null, consumer);
+    }
+
+    private void withProcessor(final File baseTempDir, final Map<String, String> jobProperties, final MapTiming timing,
+            final Consumer<Object> consumer) {
+        final DitaProcessorAdapter adapter = runtime.getAdapter();
+        final long start = System.nanoTime();
+        final Object poll = runtime.borrowFactory(baseTempDir);
+        if (timing != null) {
+            timing.borrowed(System.nanoTime() - start);
+        }
+        boolean healthy = false;
         try {
-            return supplier.get();
+            runtime.inContext(() -> {
+                final long setupStart = System.nanoTime();
+                final Object processor = adapter.newProcessor(poll, transtype, cleanOnFailure, createDebugLog, jobProperties,
+                        new MavenLoggerBridge(log, timing), adapter.mode(mode));
+                if (timing != null) {
+                    timing.setUp(System.nanoTime() - setupStart);
+                }
+                consumer.accept(processor);
+                return null;
+            });
+            healthy = true;
         } finally {
-            thread.setContextClassLoader(old);
+            runtime.releaseFactory(poll, healthy);
         }
     }
 }
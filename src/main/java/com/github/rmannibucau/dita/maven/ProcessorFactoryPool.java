@@ -0,0 +1,180 @@
+package com.github.rmannibucau.dita.maven;
+
+import java.util.Iterator;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import lombok.RequiredArgsConstructor;
+
+// bounded pool of ProcessorFactory, the factory type is opaque (distribution classloader)
+public class ProcessorFactoryPool implements AutoCloseable {
+
+    private final Supplier<Object> factory;
+
+    private final BlockingDeque<Idle> idle = new LinkedBlockingDeque<>();
+
+    private final Semaphore permits = new Semaphore(0);
+
+    private final AtomicInteger created = new AtomicInteger();
+
+    private final AtomicLong borrows = new AtomicLong();
+
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    private final AtomicLong discarded = new AtomicLong();
+
+    private final AtomicLong evicted = new AtomicLong();
+
+    private volatile int min;
+
+    private volatile int max;
+
+    private volatile long idleTimeout;
+
+    private ScheduledExecutorService evictor;
+
+    public ProcessorFactoryPool(final Supplier<Object> factory) {
+        this.factory = factory;
+    }
+
+    // can be called by each execution, the capacity only grows to not block a running execution
+    public synchronized void configure(final int min, final int max, final long idleTimeout) {
+        this.min = Math.max(0, min);
+        final int newMax = Math.max(Math.max(1, max), this.min);
+        if (newMax > this.max) {
+            permits.release(newMax - this.max);
+            this.max = newMax;
+        }
+        this.idleTimeout = idleTimeout;
+        if (idleTimeout > 0 && evictor == null) {
+            evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "dita-factory-pool-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            final long period = Math.max(1000, idleTimeout / 2);
+            evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // creates the missing factories up to min without blocking the caller
+    public CompletableFuture<Void> prewarm() {
+        final int missing = min - created.get();
+        if (missing <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final CompletableFuture<?>[] creations = new CompletableFuture<?>[missing];
+        for (int i = 0; i < missing; i++) {
+            creations[i] = CompletableFuture.runAsync(() -> {
+                if (created.incrementAndGet() > max) {
+                    created.decrementAndGet();
+                    return;
+                }
+                try {
+                    idle.offerFirst(new Idle(factory.get(), System.currentTimeMillis()));
+                } catch (final RuntimeException e) {
+                    created.decrementAndGet();
+                    throw e;
+                }
+            });
+        }
+        return CompletableFuture.allOf(creations);
+    }
+
+    public Object borrow() throws InterruptedException {
+        final long start = System.nanoTime();
+        permits.acquire();
+        try {
+            while (true) {
+                final Idle available = idle.pollFirst();
+                if (available != null) {
+                    return available.factory;
+                }
+                if (created.incrementAndGet() <= max) {
+                    try {
+                        return factory.get();
+                    } catch (final RuntimeException e) {
+                        created.decrementAndGet();
+                        throw e;
+                    }
+                }
+                created.decrementAndGet();
+                // a prewarming or returning factory is on its way
+                final Idle returned = idle.pollFirst(100, TimeUnit.MILLISECONDS);
+                if (returned != null) {
+                    return returned.factory;
+                }
+            }
+        } catch (final InterruptedException | RuntimeException e) {
+            permits.release();
+            throw e;
+        } finally {
+            final long wait = System.nanoTime() - start;
+            borrows.incrementAndGet();
+            waitNanos.addAndGet(wait);
+            maxWaitNanos.accumulateAndGet(wait, Math::max);
+        }
+    }
+
+    public void release(final Object instance, final boolean healthy) {
+        try {
+            if (healthy) {
+                idle.offerFirst(new Idle(instance, System.currentTimeMillis()));
+            } else {
+                created.decrementAndGet();
+                discarded.incrementAndGet();
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    public String stats() {
+        final long count = borrows.get();
+        return "Processor factory pool: " + created.get() + " factories (" + idle.size() + " idle, min=" + min + ", max="
+                + max + "), " + count + " borrows, wait avg="
+                + (count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitNanos.get() / count)) + "ms max="
+                + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()) + "ms, " + discarded.get() + " discarded, "
+                + evicted.get() + " evicted";
+    }
+
+    // least recently used factories are at the end of the deque
+    private void evictIdle() {
+        final long limit = System.currentTimeMillis() - idleTimeout;
+        final Iterator<Idle> iterator = idle.descendingIterator();
+        while (iterator.hasNext() && created.get() > min) {
+            final Idle next = iterator.next();
+            if (next.since < limit && idle.removeLastOccurrence(next)) {
+                created.decrementAndGet();
+                evicted.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+            evictor = null;
+        }
+        idle.clear();
+    }
+
+    @RequiredArgsConstructor
+    private static class Idle {
+
+        private final Object factory;
+
+        private final long since;
+    }
+}
@@ -0,0 +1,132 @@
+package com.github.rmannibucau.dita.maven;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// merges the render requests of dita:http in a single pending job (a set of dirty maps or all the maps).
+// a request arriving while a job runs pre-empts it: the running maps finish, the ones not started yet
+// are moved to the next job.
+public class RenderCoordinator {
+
+    private final Set<File> pendingMaps = new HashSet<>();
+
+    private boolean pendingAll;
+
+    private boolean pending;
+
+    private Job current;
+
+    private long lastDuration = -1;
+
+    private long renders;
+
+    private long preemptions;
+
+    private boolean closed;
+
+    // null for all the maps
+    public synchronized void request(final Collection<File> maps) {
+        if (maps == null) {
+            pendingAll = true;
+            pendingMaps.clear();
+        } else if (!pendingAll) {
+            pendingMaps.addAll(maps);
+        }
+        pending = true;
+        if (current != null && !current.preempted) {
+            current.preempted = true;
+            preemptions++;
+        }
+        notifyAll();
+    }
+
+    // blocks until there is something to render, null once closed
+    public synchronized Job next() throws InterruptedException {
+        while (!closed && !pending) {
+            wait();
+        }
+        if (closed) {
+            return null;
+        }
+        current = new Job(pendingAll ? null : new ArrayList<>(pendingMaps), System.nanoTime());
+        pendingAll = false;
+        pendingMaps.clear();
+        pending = false;
+        return current;
+    }
+
+    public synchronized boolean isPreempted() {
+        return closed || (current != null && current.preempted);
+    }
+
+    public synchronized void onMapEnd(final File map, final MapTiming.Status status) {
+        if (current == null) {
+            return;
+        }
+        current.done++;
+        if (status == MapTiming.Status.CANCELLED && current.preempted) {
+            current.cancelled.add(map);
+        }
+    }
+
+    public synchronized void done(final Job job) {
+        lastDuration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - job.started);
+        renders++;
+        if (!job.cancelled.isEmpty()) {
+            if (!pendingAll) {
+                pendingMaps.addAll(job.cancelled);
+            }
+            pending = true;
+        }
+        current = null;
+    }
+
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    public synchronized String status() {
+        final StringBuilder json = new StringBuilder("{\"queue\":{\"pending\":").append(pending)
+                .append(",\"all\":").append(pendingAll)
+                .append(",\"maps\":").append(pendingMaps.size())
+                .append("},\"current\":");
+        if (current == null) {
+            json.append("null");
+        } else {
+            json.append("{\"maps\":").append(current.maps == null ? "\"all\"" : Integer.toString(current.maps.size()))
+                    .append(",\"done\":").append(current.done)
+                    .append(",\"preempted\":").append(current.preempted)
+                    .append(",\"duration\":")
+                    .append(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - current.started))
+                    .append('}');
+        }
+        return json.append(",\"lastRenderDuration\":").append(lastDuration)
+                .append(",\"renders\":").append(renders)
+                .append(",\"preemptions\":").append(preemptions)
+                .append('}').toString();
+    }
+
+    @RequiredArgsConstructor
+    public static class Job {
+
+        // null for all the maps
+        @Getter
+        private final Collection<File> maps;
+
+        private final long started;
+
+        private final Collection<File> cancelled = new ArrayList<>();
+
+        private boolean preempted;
+
+        private int done;
+    }
+}
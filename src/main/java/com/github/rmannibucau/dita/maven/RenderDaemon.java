@@ -0,0 +1,298 @@
+package com.github.rmannibucau.dita.maven;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.plugin.logging.Log;
+
+import lombok.RequiredArgsConstructor;
+
+// long lived renderer keeping the distribution classloader and processor factories warm between builds,
+// in stdio mode it is a forked worker rendering one map at a time for a single build (ForkedWorkerPool)
+@RequiredArgsConstructor
+public final class RenderDaemon {
+
+    static final String TEMPLATE_CACHE_SIZE = "dita.templateCacheSize";
+
+    private final File distribution;
+
+    private final String ditaVersion;
+
+    private final File portFile;
+
+    private final long idleTimeout;
+
+    // required in each request, null in stdio mode (the pipes are only shared with the parent)
+    private final String token;
+
+    private final Map<String, ProcessorCache> processors = new ConcurrentHashMap<>();
+
+    private final ConnectionLog log = new ConnectionLog();
+
+    private final AtomicInteger activeRenderings = new AtomicInteger();
+
+    private final AtomicLong lastActivity = new AtomicLong(System.currentTimeMillis());
+
+    static final String STDIO = "--stdio";
+
+    // args: distribution, dita version, port file, idle timeout in ms
+    // or --stdio, distribution, dita version
+    public static void main(final String[] args) throws IOException {
+        if (args.length == 3 && STDIO.equals(args[0])) {
+            new RenderDaemon(new File(args[1]), args[2], null, 0, null).serveStdio();
+            return;
+        }
+        if (args.length != 4) {
+            throw new IllegalArgumentException("Usage: RenderDaemon <distribution> <version> <port file> <idle timeout ms>");
+        }
+        final byte[] token = new byte[32];
+        new SecureRandom().nextBytes(token);
+        new RenderDaemon(new File(args[0]), args[1], new File(args[2]), Long.parseLong(args[3]),
+                BuildState.toHex(token)).serve();
+    }
+
+    private void serve() throws IOException {
+        final ExecutorService pool = Executors.newCachedThreadPool(r -> {
+            final Thread thread = new Thread(r, "dita-daemon-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (final DitaRuntime runtime = DitaRuntime.create(distribution, ditaVersion,
+                Integer.getInteger(TEMPLATE_CACHE_SIZE, 0), RenderDaemon.class.getClassLoader());
+                final ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            runtime.getFactories().configure(0, Integer.MAX_VALUE, idleTimeout);
+            server.setSoTimeout(1000);
+            publishPort(server.getLocalPort());
+            System.out.println("Listening on port " + server.getLocalPort() + " for " + distribution);
+            while (true) {
+                final Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (final SocketTimeoutException ste) {
+                    if (activeRenderings.get() == 0 && System.currentTimeMillis() - lastActivity.get() > idleTimeout) {
+                        System.out.println("Idle for " + idleTimeout + "ms, exiting");
+                        break;
+                    }
+                    continue;
+                }
+                pool.execute(() -> handle(runtime, socket));
+            }
+        } finally {
+            portFile.delete();
+            pool.shutdownNow();
+        }
+    }
+
+    // requests on stdin, responses on stdout until stdin is closed
+    private void serveStdio() throws IOException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        System.setOut(System.err); // the protocol owns stdout
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        try (final DitaRuntime runtime = DitaRuntime.create(distribution, ditaVersion,
+                Integer.getInteger(TEMPLATE_CACHE_SIZE, 0), RenderDaemon.class.getClassLoader())) {
+            runtime.getFactories().configure(1, 1, 0);
+            while (handle(runtime, in, out)) {
+                // next request
+            }
+        }
+    }
+
+    // port and token, the file is created readable by the owner only
+    private void publishPort(final int port) throws IOException {
+        portFile.getParentFile().mkdirs();
+        final File tmp = new File(portFile.getParentFile(), portFile.getName() + ".tmp");
+        Files.deleteIfExists(tmp.toPath());
+        if (tmp.toPath().getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(tmp.toPath(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(tmp.toPath());
+            if (!tmp.setReadable(false, false) || !tmp.setReadable(true, true) || !tmp.setWritable(false, false)
+                    || !tmp.setWritable(true, true)) {
+                throw new IOException("Can't restrict the permissions of " + tmp);
+            }
+        }
+        Files.write(tmp.toPath(), (port + "\n" + token).getBytes(UTF_8));
+        Files.move(tmp.toPath(), portFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void handle(final DitaRuntime runtime, final Socket socket) {
+        try (final Socket s = socket;
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            handle(runtime, in, out);
+        } catch (final IOException e) {
+            System.err.println("Connection failed: " + e.getMessage());
+        }
+    }
+
+    // false when the peer closed the stream without sending a request (ping or end of the worker)
+    private boolean handle(final DitaRuntime runtime, final DataInputStream in, final DataOutputStream out)
+            throws IOException {
+        final RenderProtocol.RenderRequest request;
+        try {
+            request = RenderProtocol.readRequest(in, token);
+        } catch (final EOFException eof) {
+            return false;
+        }
+        activeRenderings.incrementAndGet();
+        log.connection.set(new Connection(out, request.isDebug()));
+        try {
+            processors.computeIfAbsent(request.configurationKey(),
+                    k -> new ProcessorCache(runtime, request.getTempDir(), request.getTranstype(),
+                            request.isCleanOnFailure(), request.isCreateDebugLog(), request.getMode(),
+                            request.getProperties(), log))
+                    .render(request.getMap(), request.getOutput(),
+                            new MapTiming(request.getMap().getName(), System.nanoTime()));
+            synchronized (out) {
+                RenderProtocol.writeDone(out);
+            }
+        } catch (final InvocationTargetException e) {
+            synchronized (out) {
+                RenderProtocol.writeError(out, e.getTargetException());
+            }
+        } catch (final RuntimeException e) {
+            synchronized (out) {
+                RenderProtocol.writeError(out, e);
+            }
+        } finally {
+            log.connection.remove();
+            lastActivity.set(System.currentTimeMillis());
+            activeRenderings.decrementAndGet();
+        }
+        return true;
+    }
+
+    @RequiredArgsConstructor
+    private static class Connection {
+
+        private final DataOutputStream out;
+
+        private final boolean debug;
+    }
+
+    // routes the logs of the processor to the connection which triggered the rendering
+    private static class ConnectionLog implements Log {
+
+        private final ThreadLocal<Connection> connection = new ThreadLocal<>();
+
+        private void write(final byte level, final CharSequence message, final Throwable error) {
+            final Connection current = connection.get();
+            if (current == null) {
+                System.out.println(message);
+                return;
+            }
+            synchronized (current.out) {
+                try {
+                    RenderProtocol.writeLog(current.out, level, message, error);
+                } catch (final IOException e) {
+                    System.err.println("Can't send log: " + e.getMessage());
+                }
+            }
+        }
+
+        @Override
+        public boolean isDebugEnabled() {
+            final Connection current = connection.get();
+            return current != null && current.debug;
+        }
+
+        @Override
+        public void debug(final CharSequence content) {
+            write(RenderProtocol.DEBUG, content, null);
+        }
+
+        @Override
+        public void debug(final CharSequence content, final Throwable error) {
+            write(RenderProtocol.DEBUG, content, error);
+        }
+
+        @Override
+        public void debug(final Throwable error) {
+            write(RenderProtocol.DEBUG, null, error);
+        }
+
+        @Override
+        public boolean isInfoEnabled() {
+            return true;
+        }
+
+        @Override
+        public void info(final CharSequence content) {
+            write(RenderProtocol.INFO, content, null);
+        }
+
+        @Override
+        public void info(final CharSequence content, final Throwable error) {
+            write(RenderProtocol.INFO, content, error);
+        }
+
+        @Override
+        public void info(final Throwable error) {
+            write(RenderProtocol.INFO, null, error);
+        }
+
+        @Override
+        public boolean isWarnEnabled() {
+            return true;
+        }
+
+        @Override
+        public void warn(final CharSequence content) {
+            write(RenderProtocol.WARN, content, null);
+        }
+
+        @Override
+        public void warn(final CharSequence content, final Throwable error) {
+            write(RenderProtocol.WARN, content, error);
+        }
+
+        @Override
+        public void warn(final Throwable error) {
+            write(RenderProtocol.WARN, null, error);
+        }
+
+        @Override
+        public boolean isErrorEnabled() {
+            return true;
+        }
+
+        @Override
+        public void error(final CharSequence content) {
+            write(RenderProtocol.ERR, content, null);
+        }
+
+        @Override
+        public void error(final CharSequence content, final Throwable error) {
+            write(RenderProtocol.ERR, content, error);
+        }
+
+        @Override
+        public void error(final Throwable error) {
+            write(RenderProtocol.ERR, null, error);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.github.rmannibucau.dita.maven;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.logging.Log;
+import org.slf4j.Logger;
+
+import lombok.RequiredArgsConstructor;
+
+// sends renderings to a RenderDaemon, forking it if none is running for this distribution
+@RequiredArgsConstructor
+public class RenderDaemonClient implements MapRenderer {
+
+    private final Endpoint daemon;
+
+    private final Log log;
+
+    private final File tempDir;
+
+    private final String transtype;
+
+    private final boolean cleanOnFailure;
+
+    private final boolean createDebugLog;
+
+    private final String mode;
+
+    private final Map<String, String> properties;
+
+    public static Endpoint ensureStarted(final File directory, final File distribution, final String ditaVersion,
+            final Collection<String> jvmArgs, final int templateCacheSize, final long idleTimeout, final Log log) {
+        final String key = key(distribution, ditaVersion);
+        final File portFile = new File(directory, key + ".port");
+        directory.mkdirs();
+        try (final RandomAccessFile lockFile = new RandomAccessFile(new File(directory, key + ".lock"), "rw");
+                final FileChannel channel = lockFile.getChannel();
+                final FileLock lock = channel.lock()) {
+            final Endpoint existing = readPort(portFile);
+            if (existing != null && ping(existing.port)) {
+                log.info("Reusing DITA daemon on port " + existing.port);
+                return existing;
+            }
+            portFile.delete();
+
+            final List<String> command = javaCommand(jvmArgs, templateCacheSize);
+            command.add(distribution.getAbsolutePath());
+            command.add(ditaVersion);
+            command.add(portFile.getAbsolutePath());
+            command.add(Long.toString(idleTimeout));
+            final File daemonLog = new File(directory, key + ".log");
+            log.info("Starting DITA daemon (logs in " + daemonLog + ")");
+            final Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.appendTo(daemonLog)).start();
+            process.getOutputStream().close();
+
+            final long end = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+            while (System.currentTimeMillis() < end) {
+                final Endpoint started = readPort(portFile);
+                if (started != null && ping(started.port)) {
+                    return started;
+                }
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("DITA daemon exited with status " + process.exitValue() + ", see " + daemonLog);
+                }
+                Thread.sleep(100);
+            }
+            process.destroy();
+            throw new IllegalStateException("DITA daemon didn't start in time, see " + daemonLog);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void render(final File map, final File output, final MapTiming timing) throws InvocationTargetException {
+        final long start = System.nanoTime();
+        try (final Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.port);
+                final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            RenderProtocol.writeRequest(out, daemon.token, new RenderProtocol.RenderRequest(tempDir, transtype, cleanOnFailure,
+                    createDebugLog, mode, properties, log.isDebugEnabled(), map, output));
+            RenderProtocol.readResponse(in, log);
+        } catch (final RenderProtocol.RemoteRenderException e) {
+            throw new InvocationTargetException(e);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Can't communicate with DITA daemon on port " + daemon.port, e);
+        } finally { // the daemon phases are not visible from there
+            timing.ran(System.nanoTime() - start);
+        }
+    }
+
+    // java command launching RenderDaemon with the plugin classes, arguments must be appended
+    static List<String> javaCommand(final Collection<String> jvmArgs, final int templateCacheSize) {
+        final List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath());
+        if (jvmArgs != null) {
+            command.addAll(jvmArgs);
+        }
+        command.add("-D" + RenderDaemon.TEMPLATE_CACHE_SIZE + "=" + templateCacheSize);
+        command.add("-cp");
+        command.add(daemonClasspath());
+        command.add(RenderDaemon.class.getName());
+        return command;
+    }
+
+    private static boolean ping(final int port) {
+        try (final Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            return true;
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    // null when there is no usable port file (none or written by a daemon without token)
+    private static Endpoint readPort(final File portFile) throws IOException {
+        if (!portFile.isFile()) {
+            return null;
+        }
+        final String[] lines = new String(Files.readAllBytes(portFile.toPath()), UTF_8).trim().split("\n");
+        if (lines.length != 2 || lines[1].trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return new Endpoint(Integer.parseInt(lines[0].trim()), lines[1].trim());
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // a daemon is bound to a distribution, a version and a plugin build
+    private static String key(final File distribution, final String ditaVersion) {
+        final File plugin = location(RenderDaemon.class);
+        final MessageDigest digest = MapDependencies.newDigest();
+        digest.update((distribution.getAbsolutePath() + '|' + ditaVersion + '|' + plugin.getAbsolutePath() + '|'
+                + plugin.lastModified()).getBytes(UTF_8));
+        return BuildState.toHex(digest.digest()).substring(0, 16);
+    }
+
+    private static String daemonClasspath() {
+        final StringBuilder classpath = new StringBuilder();
+        for (final Class<?> type : new Class<?>[] { RenderDaemon.class, Log.class, Logger.class }) {
+            if (classpath.length() > 0) {
+                classpath.append(File.pathSeparatorChar);
+            }
+            classpath.append(location(type).getAbsolutePath());
+        }
+        return classpath.toString();
+    }
+
+    private static File location(final Class<?> type) {
+        final CodeSource codeSource = type.getProtectionDomain().getCodeSource();
+        if (codeSource == null) {
+            throw new IllegalStateException("Can't find " + type + " location");
+        }
+        try {
+            return Paths.get(codeSource.getLocation().toURI()).toFile();
+        } catch (final URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @RequiredArgsConstructor
+    public static class Endpoint {
+
+        private final int port;
+
+        private final String token;
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.rmannibucau.dita.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// render duration (ms) of each map measured by the previous builds, used to schedule the longest maps first
+@RequiredArgsConstructor
+public class RenderHistory {
+
+    private final File file;
+
+    @Getter
+    private final Map<String, Long> durations = new ConcurrentHashMap<>();
+
+    public static RenderHistory load(final File file) {
+        final RenderHistory history = new RenderHistory(file);
+        if (file.isFile()) {
+            final Properties stored = new Properties();
+            try (final InputStream stream = Files.newInputStream(file.toPath())) {
+                stored.load(stream);
+            } catch (final IOException e) {
+                // no history, maps will be scheduled by size
+                return history;
+            }
+            stored.stringPropertyNames().forEach(k -> {
+                try {
+                    history.durations.put(k, Long.parseLong(stored.getProperty(k)));
+                } catch (final NumberFormatException nfe) {
+                    // ignore this entry
+                }
+            });
+        }
+        return history;
+    }
+
+    // -1 when the map was never rendered
+    public long duration(final String map) {
+        return durations.getOrDefault(map, -1L);
+    }
+
+    // smoothed to not reorder the whole build because of a single slow run
+    public void record(final String map, final long duration) {
+        durations.merge(map, duration, (previous, current) -> (previous + current) / 2);
+    }
+
+    public void store() throws IOException {
+        final Properties properties = new Properties();
+        durations.forEach((k, v) -> properties.setProperty(k, Long.toString(v)));
+        file.getParentFile().mkdirs();
+        final File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (final OutputStream stream = Files.newOutputStream(tmp.toPath())) {
+            properties.store(stream, "dita-maven-plugin render durations (ms)");
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
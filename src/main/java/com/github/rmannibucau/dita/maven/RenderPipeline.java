@@ -0,0 +1,180 @@
+package com.github.rmannibucau.dita.maven;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// runs the map renderings, aggregates their failures and optionally stops at the first one or after a timeout.
+// a timed out rendering is interrupted and reported as failed, DITA-OT can ignore the interruption so awaitAbandoned()
+// gives these renderings a bounded delay to finish before the caller releases what they use.
+@RequiredArgsConstructor
+public class RenderPipeline implements AutoCloseable {
+
+    // null to run in the caller thread
+    private final ExecutorService executor;
+
+    private final long timeout;
+
+    private final boolean failFast;
+
+    @Getter
+    private final Collection<Throwable> errors = new ConcurrentLinkedQueue<>();
+
+    private final List<CompletableFuture<Void>> results = new ArrayList<>();
+
+    private final AtomicBoolean failed = new AtomicBoolean();
+
+    @Getter
+    private final AtomicLong cancelled = new AtomicLong();
+
+    // checked before starting each rendering, lets a caller stop the pipeline at map boundaries
+    private volatile BooleanSupplier cancellation = () -> false;
+
+    private ScheduledExecutorService watchdog;
+
+    // renderings started and not finished yet, timed out ones included
+    private final AtomicInteger active = new AtomicInteger();
+
+    public void cancelWhen(final BooleanSupplier condition) {
+        this.cancellation = condition;
+    }
+
+    public void submit(final String name, final Task task, final Runnable onCancel) {
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        results.add(result);
+        final Runnable runnable = () -> {
+            if ((failFast && failed.get()) || cancellation.getAsBoolean()) {
+                cancelled.incrementAndGet();
+                onCancel.run();
+                result.cancel(false);
+                return;
+            }
+            final Thread worker = Thread.currentThread();
+            final AtomicBoolean running = new AtomicBoolean(true);
+            active.incrementAndGet();
+            final ScheduledFuture<?> timeoutTask = timeout > 0 ? watchdog().schedule(() -> {
+                synchronized (running) {
+                    final TimeoutException error = new TimeoutException("Rendering of " + name + " timed out after " + timeout + "ms");
+                    if (running.get() && result.completeExceptionally(error)) {
+                        fail(error);
+                        worker.interrupt();
+                    }
+                }
+            }, timeout, TimeUnit.MILLISECONDS) : null;
+            Throwable error = null;
+            try {
+                task.run();
+            } catch (final InvocationTargetException e) {
+                error = e.getTargetException();
+            } catch (final Exception | Error e) {
+                error = e;
+            } finally {
+                synchronized (running) {
+                    running.set(false);
+                }
+                synchronized (active) {
+                    active.decrementAndGet();
+                    active.notifyAll();
+                }
+                if (timeoutTask != null) {
+                    timeoutTask.cancel(false);
+                    if (worker.isInterrupted() && result.isCompletedExceptionally()) {
+                        Thread.interrupted(); // don't leak the timeout interruption to the next map
+                    }
+                }
+            }
+            // completed once no more active: await() then awaitAbandoned() only see the timed out renderings
+            if (error == null) {
+                result.complete(null);
+            } else if (result.completeExceptionally(error)) {
+                fail(error);
+            }
+        };
+        if (executor == null) {
+            runnable.run();
+        } else {
+            executor.execute(runnable);
+        }
+    }
+
+    public void await() {
+        for (final CompletableFuture<Void> result : results) {
+            try {
+                result.get();
+            } catch (final ExecutionException | CancellationException e) {
+                // already in errors
+            } catch (final InterruptedException e) {
+                failed.set(true);
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // waits for the timed out renderings still running, at most the render timeout (and a minute), returns how many
+    // are still running: their late results must be ignored
+    public int awaitAbandoned() {
+        final long end = System.currentTimeMillis() + Math.min(timeout, TimeUnit.MINUTES.toMillis(1));
+        synchronized (active) {
+            long remaining;
+            while (active.get() > 0 && (remaining = end - System.currentTimeMillis()) > 0) {
+                try {
+                    active.wait(remaining);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            return active.get();
+        }
+    }
+
+    private void fail(final Throwable error) {
+        errors.add(error);
+        failed.set(true);
+    }
+
+    private synchronized ScheduledExecutorService watchdog() {
+        if (watchdog == null) {
+            watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "dita-render-timeout");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return watchdog;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+        if (executor != null) {
+            executor.shutdownNow(); // only timed out renderings can still be running
+        }
+    }
+
+    public interface Task {
+
+        void run() throws Exception;
+    }
+}
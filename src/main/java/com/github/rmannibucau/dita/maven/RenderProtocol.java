@@ -0,0 +1,197 @@
+package com.github.rmannibucau.dita.maven;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.maven.plugin.logging.Log;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// binary protocol between the mojo and an out of process renderer:
+// request = one map to render, response = log events followed by a done or error event.
+// a request starts with the token the daemon wrote in its port file, only readable by its owner
+final class RenderProtocol {
+
+    static final int MAGIC = 0xD17A0001;
+
+    static final byte LOG = 'L';
+
+    static final byte DONE = 'D';
+
+    static final byte ERROR = 'E';
+
+    static final byte DEBUG = 0;
+
+    static final byte INFO = 1;
+
+    static final byte WARN = 2;
+
+    static final byte ERR = 3;
+
+    private RenderProtocol() {
+        // no-op
+    }
+
+    static void writeRequest(final DataOutputStream out, final String token, final RenderRequest request)
+            throws IOException {
+        out.writeInt(MAGIC);
+        writeString(out, token == null ? "" : token);
+        writeString(out, request.getTempDir().getAbsolutePath());
+        writeString(out, request.getTranstype());
+        out.writeBoolean(request.isCleanOnFailure());
+        out.writeBoolean(request.isCreateDebugLog());
+        writeString(out, request.getMode());
+        final Map<String, String> properties = request.getProperties() == null ? new TreeMap<>() : request.getProperties();
+        out.writeInt(properties.size());
+        for (final Map.Entry<String, String> entry : properties.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+        out.writeBoolean(request.isDebug());
+        writeString(out, request.getMap().getAbsolutePath());
+        writeString(out, request.getOutput().getAbsolutePath());
+        out.flush();
+    }
+
+    // token: null when the peer is trusted (stdio worker)
+    static RenderRequest readRequest(final DataInputStream in, final String token) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Unexpected request");
+        }
+        final String sent = readString(in);
+        if (token != null && !MessageDigest.isEqual(token.getBytes(UTF_8), sent.getBytes(UTF_8))) {
+            throw new IOException("Invalid token");
+        }
+        final File tempDir = new File(readString(in));
+        final String transtype = readString(in);
+        final boolean cleanOnFailure = in.readBoolean();
+        final boolean createDebugLog = in.readBoolean();
+        final String mode = readString(in);
+        final int propertiesCount = in.readInt();
+        final Map<String, String> properties = new TreeMap<>();
+        for (int i = 0; i < propertiesCount; i++) {
+            properties.put(readString(in), readString(in));
+        }
+        final boolean debug = in.readBoolean();
+        return new RenderRequest(tempDir, transtype, cleanOnFailure, createDebugLog, mode, properties, debug,
+                new File(readString(in)), new File(readString(in)));
+    }
+
+    // reads the response events until done/error, logs are forwarded to the caller log
+    static void readResponse(final DataInputStream in, final Log log) throws IOException, RemoteRenderException {
+        while (true) {
+            final byte event = in.readByte();
+            switch (event) {
+            case LOG:
+                final byte level = in.readByte();
+                final String message = readString(in);
+                switch (level) {
+                case DEBUG:
+                    log.debug(message);
+                    break;
+                case INFO:
+                    log.info(message);
+                    break;
+                case WARN:
+                    log.warn(message);
+                    break;
+                default:
+                    log.error(message);
+                }
+                break;
+            case DONE:
+                return;
+            case ERROR:
+                throw new RemoteRenderException(readString(in));
+            default:
+                throw new IOException("Unexpected event: " + event);
+            }
+        }
+    }
+
+    static void writeLog(final DataOutputStream out, final byte level, final CharSequence message, final Throwable error)
+            throws IOException {
+        out.writeByte(LOG);
+        out.writeByte(level);
+        writeString(out, error == null ? String.valueOf(message)
+                : (message == null ? "" : message + "\n") + toString(error));
+        out.flush();
+    }
+
+    static void writeDone(final DataOutputStream out) throws IOException {
+        out.writeByte(DONE);
+        out.flush();
+    }
+
+    static void writeError(final DataOutputStream out, final Throwable error) throws IOException {
+        out.writeByte(ERROR);
+        writeString(out, error.getMessage() == null ? toString(error) : error.getMessage());
+        out.flush();
+    }
+
+    private static String toString(final Throwable error) {
+        final StringWriter writer = new StringWriter();
+        try (final PrintWriter printWriter = new PrintWriter(writer)) {
+            error.printStackTrace(printWriter);
+        }
+        return writer.toString();
+    }
+
+    // no writeUTF there, messages can be bigger than 64k
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    static class RenderRequest {
+
+        private final File tempDir;
+
+        private final String transtype;
+
+        private final boolean cleanOnFailure;
+
+        private final boolean createDebugLog;
+
+        private final String mode;
+
+        private final Map<String, String> properties;
+
+        private final boolean debug;
+
+        private final File map;
+
+        private final File output;
+
+        String configurationKey() {
+            return tempDir.getAbsolutePath() + '|' + transtype + '|' + cleanOnFailure + '|' + createDebugLog + '|' + mode
+                    + '|' + new TreeMap<>(properties == null ? new TreeMap<>() : properties);
+        }
+    }
+
+    static class RemoteRenderException extends Exception {
+
+        RemoteRenderException(final String message) {
+            super(message);
+        }
+    }
+}
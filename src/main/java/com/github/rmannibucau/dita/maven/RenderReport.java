@@ -0,0 +1,81 @@
+package com.github.rmannibucau.dita.maven;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Comparator.comparingLong;
+import static java.util.stream.Collectors.toList;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+// collects the timings of a build, they are written as json and csv in the temp dir
+public class RenderReport {
+
+    private final Collection<MapTiming> timings = new ConcurrentLinkedQueue<>();
+
+    public void add(final MapTiming timing) {
+        timings.add(timing);
+        JfrEvents.render(timing);
+    }
+
+    public List<String> slowest(final int count) {
+        return timings.stream().filter(t -> t.getStatus() != MapTiming.Status.UP_TO_DATE)
+                .sorted(comparingLong(MapTiming::getTotal).reversed()).limit(count)
+                .map(t -> String.format("%8dms %s (queue=%dms, borrow=%dms, setup=%dms, run=%dms, %d warnings, %d errors)",
+                        ms(t.getTotal()), t.getMap(), ms(t.getQueue()), ms(t.getBorrow()), ms(t.getSetup()),
+                        ms(t.getRun()), t.getWarnings().get(), t.getErrors().get()))
+                .collect(toList());
+    }
+
+    public void write(final File directory) throws IOException {
+        directory.mkdirs();
+        final List<MapTiming> sorted = timings.stream().sorted(comparingLong(MapTiming::getTotal).reversed())
+                .collect(toList());
+        try (final Writer json = Files.newBufferedWriter(new File(directory, "dita-render-report.json").toPath(), UTF_8);
+                final Writer csv = Files.newBufferedWriter(new File(directory, "dita-render-report.csv").toPath(), UTF_8)) {
+            csv.write("map,status,total_ms,queue_ms,borrow_ms,setup_ms,run_ms,warnings,errors\n");
+            json.write("[");
+            boolean first = true;
+            for (final MapTiming timing : sorted) {
+                csv.write('"' + timing.getMap().replace("\"", "\"\"") + "\"," + timing.getStatus() + ',' + ms(timing.getTotal())
+                        + ',' + ms(timing.getQueue()) + ',' + ms(timing.getBorrow()) + ',' + ms(timing.getSetup()) + ','
+                        + ms(timing.getRun()) + ',' + timing.getWarnings().get() + ',' + timing.getErrors().get() + '\n');
+                json.write((first ? "" : ",") + "\n  {\"map\":\"" + escape(timing.getMap()) + "\",\"status\":\""
+                        + timing.getStatus() + "\",\"totalMs\":" + ms(timing.getTotal()) + ",\"queueMs\":"
+                        + ms(timing.getQueue()) + ",\"borrowMs\":" + ms(timing.getBorrow()) + ",\"setupMs\":"
+                        + ms(timing.getSetup()) + ",\"runMs\":" + ms(timing.getRun()) + ",\"warnings\":"
+                        + timing.getWarnings().get() + ",\"errors\":" + timing.getErrors().get() + "}");
+                first = false;
+            }
+            json.write("\n]\n");
+        }
+    }
+
+    private static long ms(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static String escape(final String value) {
+        final StringBuilder builder = new StringBuilder(value.length());
+        for (final char c : value.toCharArray()) {
+            switch (c) {
+            case '"':
+            case '\\':
+                builder.append('\\').append(c);
+                break;
+            default:
+                if (c < 0x20) {
+                    builder.append(String.format("\\u%04x", (int) c));
+                } else {
+                    builder.append(c);
+                }
+            }
+        }
+        return builder.toString();
+    }
+}
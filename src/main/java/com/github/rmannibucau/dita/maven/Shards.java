@@ -0,0 +1,136 @@
+package com.github.rmannibucau.dita.maven;
+
+import static java.util.Comparator.comparing;
+import static java.util.Comparator.comparingLong;
+import static java.util.stream.Collectors.toList;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+// splits the maps between CI nodes and describes what a node produced to merge the outputs afterwards
+public final class Shards {
+
+    public static final String MANIFEST = ".dita-shard.properties";
+
+    private static final String FILE_PREFIX = "file.";
+
+    private static final String DURATION_PREFIX = "duration.";
+
+    private static final String MAP_PREFIX = "map.";
+
+    private static final String DONE_PREFIX = "done.";
+
+    private Shards() {
+        // no-op
+    }
+
+    // greedy longest processing time: all shards compute the same assignment as long as they see the same maps and costs
+    public static <T> Map<T, Integer> assign(final List<T> maps, final Function<T, String> key,
+            final ToLongFunction<T> cost, final int count) {
+        final List<T> sorted = maps.stream()
+                .sorted(comparingLong(cost).reversed().thenComparing(comparing(key)))
+                .collect(toList());
+        final long[] loads = new long[count];
+        final Map<T, Integer> assignment = new LinkedHashMap<>();
+        for (final T map : sorted) {
+            int target = 0;
+            for (int i = 1; i < count; i++) {
+                if (loads[i] < loads[target]) {
+                    target = i;
+                }
+            }
+            loads[target] += Math.max(1, cost.applyAsLong(map));
+            assignment.put(map, target);
+        }
+        return assignment;
+    }
+
+    // assignment: map -> shard of all the maps, done: the maps this shard rendered (or found up to date),
+    // files: what these maps published, relative to outputDir
+    public static void writeManifest(final File outputDir, final int index, final int count,
+            final Map<String, Integer> assignment, final Collection<String> done, final Collection<String> files,
+            final Map<String, Long> durations) throws IOException {
+        final Properties manifest = new Properties();
+        manifest.setProperty("shard.index", Integer.toString(index));
+        manifest.setProperty("shard.count", Integer.toString(count));
+        assignment.forEach((k, v) -> manifest.setProperty(MAP_PREFIX + k, Integer.toString(v)));
+        done.forEach(k -> manifest.setProperty(DONE_PREFIX + k, "true"));
+        durations.forEach((k, v) -> manifest.setProperty(DURATION_PREFIX + k, Long.toString(v)));
+        for (final String file : files) {
+            if (!MANIFEST.equals(file)) {
+                manifest.setProperty(FILE_PREFIX + file, Distributions.sha256(new File(outputDir, file)));
+            }
+        }
+        outputDir.mkdirs();
+        final File tmp = new File(outputDir, MANIFEST + ".tmp");
+        try (final OutputStream stream = Files.newOutputStream(tmp.toPath())) {
+            manifest.store(stream, "dita-maven-plugin shard " + index + "/" + count);
+        }
+        Files.move(tmp.toPath(), new File(outputDir, MANIFEST).toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static Properties readManifest(final File shardDir) throws IOException {
+        final File file = new File(shardDir, MANIFEST);
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("No shard manifest in " + shardDir + ", was it rendered with shardCount > 1?");
+        }
+        final Properties manifest = new Properties();
+        try (final InputStream stream = Files.newInputStream(file.toPath())) {
+            manifest.load(stream);
+        }
+        return manifest;
+    }
+
+    // relative path -> sha256
+    public static Map<String, String> files(final Properties manifest) {
+        return entries(manifest, FILE_PREFIX);
+    }
+
+    public static Map<String, String> durations(final Properties manifest) {
+        return entries(manifest, DURATION_PREFIX);
+    }
+
+    // map -> assigned shard
+    public static Map<String, String> assignment(final Properties manifest) {
+        return entries(manifest, MAP_PREFIX);
+    }
+
+    public static Collection<String> done(final Properties manifest) {
+        return entries(manifest, DONE_PREFIX).keySet();
+    }
+
+    // the files of a directory relative to base, for the maps rendered without publisher index
+    public static Collection<String> list(final File base, final File directory) throws IOException {
+        final Collection<String> files = new ArrayList<>();
+        if (directory.isDirectory()) {
+            try (final Stream<Path> paths = Files.walk(directory.toPath())) {
+                for (final Path file : (Iterable<Path>) paths.filter(Files::isRegularFile)::iterator) {
+                    files.add(base.toPath().relativize(file).toString().replace(File.separatorChar, '/'));
+                }
+            }
+        }
+        return files;
+    }
+
+    private static Map<String, String> entries(final Properties manifest, final String prefix) {
+        final Map<String, String> entries = new TreeMap<>();
+        manifest.stringPropertyNames().stream().filter(k -> k.startsWith(prefix))
+                .forEach(k -> entries.put(k.substring(prefix.length()), manifest.getProperty(k)));
+        return entries;
+    }
+}
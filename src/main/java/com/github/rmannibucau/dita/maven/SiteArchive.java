@@ -0,0 +1,436 @@
+package com.github.rmannibucau.dita.maven;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import lombok.RequiredArgsConstructor;
+
+// zip of the rendered site written while the maps are rendered: the rendering threads read, hash and compress the
+// files they just produced and a single thread appends them to the archive. a content already compressed (css,
+// images and scripts copied for each map) is reused instead of being compressed again and a path added by several
+// maps is written once. big files are only hashed by the rendering threads, the writer streams them in the archive.
+// when maps added a path with different contents the archive keeps the file of the output directory once all maps
+// are rendered (the last one written there). it is written to a temporary file and only moved in place when complete.
+public class SiteArchive {
+
+    private static final int QUEUE_SIZE = 256;
+
+    private static final long REUSE_CACHE = 64 * 1024 * 1024;
+
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+
+    // bigger files are not kept in memory while queued
+    private static final long STREAM_THRESHOLD = 256 * 1024;
+
+    private static final Entry END = new Entry(null, null, 0, null, null);
+
+    private final File target;
+
+    private final File tmp;
+
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>(QUEUE_SIZE);
+
+    private final Map<String, Compressed> compressed = new ConcurrentHashMap<>();
+
+    private final AtomicLong cachedBytes = new AtomicLong();
+
+    private final AtomicLong reused = new AtomicLong();
+
+    private final ThreadLocal<Deflater> deflaters;
+
+    private final Thread writer;
+
+    // only used by the writer thread
+    private final Map<String, Central> written = new HashMap<>();
+
+    // path -> file of the output directory, the paths added with different contents
+    private final Map<String, File> conflicts = new HashMap<>();
+
+    private final List<Central> central = new ArrayList<>();
+
+    private long duplicates;
+
+    private long rawBytes;
+
+    private volatile Throwable error;
+
+    public SiteArchive(final File target, final int level) throws IOException {
+        this.target = target;
+        this.tmp = new File(target.getParentFile(), target.getName() + ".tmp");
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level, true));
+        Files.createDirectories(target.getParentFile().toPath());
+        final OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp.toPath()), 65536);
+        this.writer = new Thread(() -> write(out), "dita-site-archive");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // path: the entry name, relative to the site root with / separators
+    public void add(final String path, final File file) throws IOException {
+        if (error != null) {
+            throw new IOException("Archive " + target + " failed", error);
+        }
+        if (file.length() > STREAM_THRESHOLD) {
+            enqueue(new Entry(path, file, file.lastModified(), Distributions.sha256(file), null));
+            return;
+        }
+        final byte[] content = Files.readAllBytes(file.toPath());
+        final String hash = BuildState.toHex(MapDependencies.newDigest().digest(content));
+        Compressed value = compressed.get(hash);
+        if (value != null) {
+            reused.incrementAndGet();
+        } else {
+            value = compress(content);
+            // small files are the duplicated ones, a big file is not worth keeping its compressed form
+            if (cachedBytes.get() + value.data.length <= REUSE_CACHE && compressed.putIfAbsent(hash, value) == null) {
+                cachedBytes.addAndGet(value.data.length);
+            }
+        }
+        enqueue(new Entry(path, file, file.lastModified(), hash, value));
+    }
+
+    public void addDirectory(final File directory, final String prefix) throws IOException {
+        if (!directory.isDirectory()) {
+            return;
+        }
+        final Path base = directory.toPath();
+        try (final Stream<Path> files = Files.walk(base)) {
+            for (final Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                final String relative = base.relativize(file).toString().replace(File.separatorChar, '/');
+                add(prefix.isEmpty() ? relative : prefix + '/' + relative, file.toFile());
+            }
+        }
+    }
+
+    public String stats() {
+        return "Archived " + central.size() + " files in " + target.getName() + " (" + (rawBytes >> 20) + "MB, "
+                + reused.get() + " compressions reused, " + duplicates + " duplicated paths, " + conflicts.size()
+                + " with different contents)";
+    }
+
+    // keep: false drops the archive (failed build)
+    public void close(final boolean keep) throws IOException {
+        enqueue(END);
+        try {
+            writer.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing " + target, e);
+        }
+        if (error != null || !keep) {
+            Files.deleteIfExists(tmp.toPath());
+            if (error != null) {
+                throw new IOException("Can't write " + target + ": " + error.getMessage(), error);
+            }
+            return;
+        }
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void enqueue(final Entry entry) throws IOException {
+        try {
+            while (!queue.offer(entry, 100, TimeUnit.MILLISECONDS)) {
+                if (!writer.isAlive()) {
+                    throw new IOException("Archive " + target + " failed", error);
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing " + target, e);
+        }
+    }
+
+    private Compressed compress(final byte[] content) {
+        final CRC32 crc = new CRC32();
+        crc.update(content);
+        final Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(content);
+        deflater.finish();
+        final byte[] buffer = new byte[Math.max(64, content.length + content.length / 1000 + 64)];
+        int length = 0;
+        while (!deflater.finished() && length < content.length) {
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        if (!deflater.finished() || length >= content.length) { // doesn't compress (images), stored as is
+            return new Compressed(crc.getValue(), 0, content.length, content);
+        }
+        final byte[] data = new byte[length];
+        System.arraycopy(buffer, 0, data, 0, length);
+        return new Compressed(crc.getValue(), 8, content.length, data);
+    }
+
+    private void write(final OutputStream stream) {
+        try (final CountingStream out = new CountingStream(stream)) {
+            while (true) {
+                final Entry entry = queue.take();
+                if (entry == END) {
+                    break;
+                }
+                final Central existing = written.get(entry.path);
+                if (existing != null) { // same output from several maps
+                    duplicates++;
+                    if (!existing.hash.equals(entry.hash)) {
+                        conflicts.put(entry.path, entry.file);
+                    }
+                    continue;
+                }
+                final Central added = append(out, entry);
+                written.put(entry.path, added);
+                central.add(added);
+            }
+            // the renderings are done: keep what the output directory has for the conflicting paths
+            for (final Map.Entry<String, File> conflict : conflicts.entrySet()) {
+                final Central previous = written.get(conflict.getKey());
+                final File file = conflict.getValue();
+                final String hash = file.isFile() ? Distributions.sha256(file) : previous.hash;
+                if (hash.equals(previous.hash)) {
+                    continue;
+                }
+                final Central replacement = append(out, new Entry(conflict.getKey(), file, file.lastModified(), hash,
+                        null));
+                central.set(central.indexOf(previous), replacement);
+                rawBytes -= previous.size;
+            }
+
+            final long start = out.count;
+            for (final Central entry : central) {
+                final boolean zip64 = entry.offset >= ZIP64_LIMIT;
+                out.int32(0x02014b50);
+                out.int16(zip64 ? 45 : 20);
+                out.int16(zip64 ? 45 : 20);
+                out.int16(entry.flags);
+                out.int16(entry.method);
+                out.int32(entry.time);
+                out.int32(entry.crc);
+                out.int32(entry.compressedSize);
+                out.int32(entry.size);
+                out.int16(entry.name.length);
+                out.int16(zip64 ? 12 : 0);
+                out.int16(0); // comment
+                out.int16(0); // disk
+                out.int16(0); // internal attributes
+                out.int32(0); // external attributes
+                out.int32(zip64 ? ZIP64_LIMIT : entry.offset);
+                out.write(entry.name);
+                if (zip64) {
+                    out.int16(0x0001);
+                    out.int16(8);
+                    out.int64(entry.offset);
+                }
+            }
+            final long end = out.count;
+            final long size = end - start;
+            final boolean zip64 = central.size() >= 0xFFFF || start >= ZIP64_LIMIT || size >= ZIP64_LIMIT;
+            if (zip64) {
+                out.int32(0x06064b50);
+                out.int64(44);
+                out.int16(45);
+                out.int16(45);
+                out.int32(0);
+                out.int32(0);
+                out.int64(central.size());
+                out.int64(central.size());
+                out.int64(size);
+                out.int64(start);
+                out.int32(0x07064b50);
+                out.int32(0);
+                out.int64(end);
+                out.int32(1);
+            }
+            out.int32(0x06054b50);
+            out.int16(0);
+            out.int16(0);
+            out.int16(zip64 ? 0xFFFF : central.size());
+            out.int16(zip64 ? 0xFFFF : central.size());
+            out.int32(zip64 ? ZIP64_LIMIT : size);
+            out.int32(zip64 ? ZIP64_LIMIT : start);
+            out.int16(0);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = e;
+        } catch (final IOException | RuntimeException e) {
+            error = e;
+        }
+    }
+
+    // local header and data of an entry, streamed from its file when it wasn't compressed by add()
+    private Central append(final CountingStream out, final Entry entry) throws IOException {
+        final byte[] name = entry.path.getBytes(UTF_8);
+        final long offset = out.count;
+        final long time = dosTime(entry.lastModified);
+        final Compressed content = entry.content;
+        final int flags = content == null ? 0x0808 : 0x0800; // UTF-8 names, sizes after the data when streamed
+        out.int32(0x04034b50);
+        out.int16(offset >= ZIP64_LIMIT ? 45 : 20);
+        out.int16(flags);
+        out.int16(content == null ? 8 : content.method);
+        out.int32(time);
+        out.int32(content == null ? 0 : content.crc);
+        out.int32(content == null ? 0 : content.data.length);
+        out.int32(content == null ? 0 : content.size);
+        out.int16(name.length);
+        out.int16(0);
+        out.write(name);
+        if (content != null) {
+            out.write(content.data);
+            rawBytes += content.size;
+            return new Central(name, entry.hash, flags, content.method, content.crc, content.data.length, content.size,
+                    time, offset);
+        }
+
+        final CRC32 crc = new CRC32();
+        final Deflater deflater = deflaters.get();
+        deflater.reset();
+        final long start = out.count;
+        long size = 0;
+        final byte[] buffer = new byte[65536];
+        final byte[] compressed = new byte[65536];
+        try (final InputStream stream = Files.newInputStream(entry.file.toPath())) {
+            int read;
+            while ((read = stream.read(buffer)) >= 0) {
+                crc.update(buffer, 0, read);
+                size += read;
+                deflater.setInput(buffer, 0, read);
+                while (!deflater.needsInput()) {
+                    out.write(compressed, deflater.deflate(compressed));
+                }
+            }
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+            out.write(compressed, deflater.deflate(compressed));
+        }
+        final long compressedSize = out.count - start;
+        if (size >= ZIP64_LIMIT || compressedSize >= ZIP64_LIMIT) {
+            throw new IOException(entry.file + " is too big to be archived");
+        }
+        out.int32(0x08074b50); // data descriptor
+        out.int32(crc.getValue());
+        out.int32(compressedSize);
+        out.int32(size);
+        rawBytes += size;
+        return new Central(name, entry.hash, flags, 8, crc.getValue(), compressedSize, size, time, offset);
+    }
+
+    private static long dosTime(final long millis) {
+        final LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        if (time.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((long) (time.getYear() - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16
+                | time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1) & 0xFFFFFFFFL;
+    }
+
+    @RequiredArgsConstructor
+    private static class Compressed {
+
+        private final long crc;
+
+        // 0: stored, 8: deflated
+        private final int method;
+
+        private final long size;
+
+        private final byte[] data;
+    }
+
+    @RequiredArgsConstructor
+    private static class Entry {
+
+        private final String path;
+
+        private final File file;
+
+        private final long lastModified;
+
+        private final String hash;
+
+        // null when the file is streamed by the writer
+        private final Compressed content;
+    }
+
+    @RequiredArgsConstructor
+    private static class Central {
+
+        private final byte[] name;
+
+        private final String hash;
+
+        private final int flags;
+
+        private final int method;
+
+        private final long crc;
+
+        private final long compressedSize;
+
+        private final long size;
+
+        private final long time;
+
+        private final long offset;
+    }
+
+    // little endian writer tracking the offset
+    @RequiredArgsConstructor
+    private static class CountingStream implements AutoCloseable {
+
+        private final OutputStream delegate;
+
+        private long count;
+
+        private void write(final byte[] bytes) throws IOException {
+            write(bytes, bytes.length);
+        }
+
+        private void write(final byte[] bytes, final int length) throws IOException {
+            delegate.write(bytes, 0, length);
+            count += length;
+        }
+
+        private void int16(final int value) throws IOException {
+            delegate.write(value & 0xFF);
+            delegate.write((value >>> 8) & 0xFF);
+            count += 2;
+        }
+
+        private void int32(final long value) throws IOException {
+            int16((int) (value & 0xFFFF));
+            int16((int) ((value >>> 16) & 0xFFFF));
+        }
+
+        private void int64(final long value) throws IOException {
+            int32(value & 0xFFFFFFFFL);
+            int32(value >>> 32);
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.github.rmannibucau.dita.maven;
+
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.util.stream.Collectors.joining;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+// walks the dita directory and emits the maps to render as soon as they are found
+public class SourceScanner {
+
+    private final Path root;
+
+    private final Collection<String> names;
+
+    private final Pattern nameMatcher;
+
+    private final Pattern includeMatcher;
+
+    private final Pattern excludeMatcher;
+
+    private final Collection<Path> ignoredDirectories;
+
+    private final boolean parallel;
+
+    // patterns/names are the legacy top level filters, includes/excludes are ant globs relative to the root
+    public SourceScanner(final Path root, final Collection<String> patterns, final Collection<String> names,
+            final Collection<String> includes, final Collection<String> excludes,
+            final Collection<Path> ignoredDirectories, final boolean parallel) {
+        this.root = root.toAbsolutePath().normalize();
+        this.names = names;
+        this.nameMatcher = patterns == null || patterns.isEmpty() ? null
+                : Pattern.compile(patterns.stream().map(p -> "(?:" + p + ")").collect(joining("|")));
+        this.includeMatcher = toMatcher(includes);
+        this.excludeMatcher = toMatcher(excludes);
+        this.ignoredDirectories = new ArrayList<>();
+        ignoredDirectories.forEach(p -> this.ignoredDirectories.add(p.toAbsolutePath().normalize()));
+        this.parallel = parallel;
+    }
+
+    public void scan(final Consumer<File> onMap) {
+        if (!Files.isDirectory(root)) {
+            throw new IllegalStateException("no dita children for " + root);
+        }
+        final DirectoryScan scan = new DirectoryScan(root, onMap);
+        if (parallel) {
+            ForkJoinPool.commonPool().invoke(scan);
+        } else {
+            scan.compute();
+        }
+    }
+
+    private boolean isRecursive() {
+        return includeMatcher != null;
+    }
+
+    private boolean accept(final Path file) {
+        final String relative = relative(file);
+        if (excludeMatcher != null && excludeMatcher.matcher(relative).matches()) {
+            return false;
+        }
+        if (includeMatcher != null) {
+            return includeMatcher.matcher(relative).matches();
+        }
+        final String name = file.getFileName().toString();
+        return (names != null && names.contains(name))
+                || (names == null && nameMatcher == null || nameMatcher != null && nameMatcher.matcher(name).matches());
+    }
+
+    private boolean acceptDirectory(final Path directory) {
+        return !ignoredDirectories.contains(directory)
+                && (excludeMatcher == null || !excludeMatcher.matcher(relative(directory) + '/').matches());
+    }
+
+    private String relative(final Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    // one alternation for all globs to evaluate a single automaton per path
+    private static Pattern toMatcher(final Collection<String> globs) {
+        if (globs == null || globs.isEmpty()) {
+            return null;
+        }
+        return Pattern.compile(globs.stream().map(g -> "(?:" + toRegex(g) + ")").collect(joining("|")));
+    }
+
+    private static String toRegex(final String glob) {
+        String normalized = glob.replace('\\', '/');
+        if (normalized.endsWith("/")) { // ant convention: "dir/" means "dir/**"
+            normalized += "**";
+        }
+        final StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < normalized.length(); i++) {
+            final char c = normalized.charAt(i);
+            if (c == '*') {
+                if (i + 1 < normalized.length() && normalized.charAt(i + 1) == '*') {
+                    if (i + 2 < normalized.length() && normalized.charAt(i + 2) == '/') {
+                        regex.append("(?:.*/)?");
+                        i += 2;
+                    } else {
+                        regex.append(".*");
+                        i++;
+                    }
+                } else {
+                    regex.append("[^/]*");
+                }
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else if ("\\.[]{}()+-^$|".indexOf(c) >= 0) {
+                regex.append('\\').append(c);
+            } else {
+                regex.append(c);
+            }
+        }
+        return regex.toString();
+    }
+
+    private class DirectoryScan extends RecursiveAction {
+
+        private final Path directory;
+
+        private final Consumer<File> onMap;
+
+        private DirectoryScan(final Path directory, final Consumer<File> onMap) {
+            this.directory = directory;
+            this.onMap = onMap;
+        }
+
+        @Override
+        protected void compute() {
+            final List<DirectoryScan> children = new ArrayList<>();
+            try (final DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (final Path child : stream) {
+                    if (Files.isDirectory(child, NOFOLLOW_LINKS)) {
+                        if (isRecursive() && acceptDirectory(child)) {
+                            children.add(new DirectoryScan(child, onMap));
+                        }
+                    } else if (Files.isRegularFile(child) && accept(child)) {
+                        onMap.accept(child.toFile());
+                    }
+                }
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (parallel) {
+                invokeAll(children);
+            } else {
+                children.forEach(DirectoryScan::compute);
+            }
+        }
+    }
+}
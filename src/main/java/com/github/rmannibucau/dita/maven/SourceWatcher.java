@@ -0,0 +1,104 @@
+package com.github.rmannibucau.dita.maven;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// recursive WatchService on the sources, changes are returned once no new event arrived during the debounce delay
+public class SourceWatcher implements AutoCloseable {
+
+    private final WatchService watchService;
+
+    private final Collection<Path> excluded;
+
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+
+    public SourceWatcher(final Path root, final Collection<Path> excluded) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.excluded = excluded;
+        register(root);
+    }
+
+    // null means events were lost (overflow), everything must be considered changed
+    public Set<Path> awaitChanges(final long debounce) throws InterruptedException {
+        final Set<Path> changes = new HashSet<>();
+        try {
+            WatchKey key = watchService.take();
+            boolean overflow = false;
+            while (key != null) {
+                overflow |= collect(key, changes);
+                key = watchService.poll(debounce, TimeUnit.MILLISECONDS);
+            }
+            return overflow ? null : changes;
+        } catch (final ClosedWatchServiceException e) {
+            return changes;
+        }
+    }
+
+    private boolean collect(final WatchKey key, final Set<Path> changes) {
+        boolean overflow = false;
+        final Path directory = directories.get(key);
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW || directory == null) {
+                overflow = true;
+                continue;
+            }
+            final Path path = directory.resolve(Path.class.cast(event.context())).normalize();
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                try {
+                    register(path);
+                    try (final Stream<Path> created = Files.walk(path)) { // created before the registration
+                        created.filter(Files::isRegularFile).forEach(changes::add);
+                    }
+                } catch (final IOException e) {
+                    overflow = true;
+                }
+            } else {
+                changes.add(path);
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+        return overflow;
+    }
+
+    private void register(final Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+                if (excluded.stream().anyMatch(dir::startsWith)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                directories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
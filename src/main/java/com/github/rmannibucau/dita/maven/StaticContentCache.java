@@ -0,0 +1,141 @@
+package com.github.rmannibucau.dita.maven;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+import java.util.zip.GZIPOutputStream;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// hot output files kept in memory with their validators and a gzip variant, bounded by a byte budget (LRU).
+// entries are validated against the file size/last modified date so a stale entry is never served.
+@RequiredArgsConstructor
+public class StaticContentCache {
+
+    private static final int MIN_COMPRESSIBLE_SIZE = 1024;
+
+    private final long maxBytes;
+
+    // applied to the HTML pages before caching them, null to serve them as they are
+    private final UnaryOperator<byte[]> htmlTransformer;
+
+    private final Map<Path, Entry> entries = new LinkedHashMap<>(64, .75f, true);
+
+    private long size;
+
+    private long hits;
+
+    private long misses;
+
+    public Entry get(final Path file) throws IOException {
+        final long lastModified = Files.getLastModifiedTime(file).toMillis();
+        final long length = Files.size(file);
+        synchronized (entries) {
+            final Entry cached = entries.get(file);
+            if (cached != null && cached.lastModified == lastModified && cached.sourceLength == length) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+        final Entry loaded = load(file, lastModified, length);
+        if (loaded.content != null) {
+            synchronized (entries) {
+                final Entry previous = entries.put(file, loaded);
+                if (previous != null) {
+                    size -= previous.weight();
+                }
+                size += loaded.weight();
+                final Iterator<Entry> eldest = entries.values().iterator();
+                while (size > maxBytes && eldest.hasNext()) {
+                    size -= eldest.next().weight();
+                    eldest.remove();
+                }
+            }
+        }
+        return loaded;
+    }
+
+    public void invalidate(final Collection<Path> files) {
+        synchronized (entries) {
+            files.forEach(file -> {
+                final Entry removed = entries.remove(file);
+                if (removed != null) {
+                    size -= removed.weight();
+                }
+            });
+        }
+    }
+
+    public String stats() {
+        synchronized (entries) {
+            return "static cache: " + entries.size() + " files, " + (size / 1024) + "KB, " + hits + " hits, " + misses
+                    + " misses";
+        }
+    }
+
+    private Entry load(final Path file, final long lastModified, final long length) throws IOException {
+        final String etag = '"' + Long.toHexString(length) + '-' + Long.toHexString(lastModified) + '"';
+        final boolean html = isHtml(file);
+        // too big to be cached: streamed from the disk, HTML pages are always loaded to be transformed
+        if (length > maxBytes / 4 && !(html && htmlTransformer != null)) {
+            return new Entry(lastModified, length, etag, null, null, false);
+        }
+        final boolean transformed = html && htmlTransformer != null;
+        final byte[] content = transformed ? htmlTransformer.apply(Files.readAllBytes(file)) : Files.readAllBytes(file);
+        return new Entry(lastModified, length, etag, content, isCompressible(file) ? gzip(content) : null, transformed);
+    }
+
+    private static byte[] gzip(final byte[] content) throws IOException {
+        if (content.length < MIN_COMPRESSIBLE_SIZE) {
+            return null;
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 3);
+        try (final GZIPOutputStream stream = new GZIPOutputStream(out)) {
+            stream.write(content);
+        }
+        return out.size() < content.length ? out.toByteArray() : null;
+    }
+
+    static boolean isHtml(final Path file) {
+        final String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".html") || name.endsWith(".htm");
+    }
+
+    private static boolean isCompressible(final Path file) {
+        final String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return isHtml(file) || name.endsWith(".css") || name.endsWith(".js") || name.endsWith(".json")
+                || name.endsWith(".xml") || name.endsWith(".svg") || name.endsWith(".txt");
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class Entry {
+
+        private final long lastModified;
+
+        private final long sourceLength;
+
+        private final String etag;
+
+        // null when the file must be streamed from the disk
+        private final byte[] content;
+
+        private final byte[] gzip;
+
+        // the precompressed siblings don't match the content anymore
+        private final boolean transformed;
+
+        private long weight() {
+            return content.length + (gzip == null ? 0 : gzip.length);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.github.rmannibucau.dita.maven;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import lombok.RequiredArgsConstructor;
+
+// serves the output directory with ETag/Last-Modified validation and the in memory gzip variant when the client accepts
+// it. gzip/brotli siblings (index.html.gz, index.html.br) are preferred when something else (a DITA-OT plugin, a later
+// build step) produced them. anything else goes to the default servlet.
+@RequiredArgsConstructor
+public class StaticContentFilter implements Filter {
+
+    private final Path root;
+
+    private final StaticContentCache cache;
+
+    private FilterConfig config;
+
+    @Override
+    public void init(final FilterConfig filterConfig) {
+        this.config = filterConfig;
+    }
+
+    @Override
+    public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse,
+            final FilterChain chain) throws IOException, ServletException {
+        final HttpServletRequest request = HttpServletRequest.class.cast(servletRequest);
+        final HttpServletResponse response = HttpServletResponse.class.cast(servletResponse);
+        final boolean head = "HEAD".equals(request.getMethod());
+        if (!head && !"GET".equals(request.getMethod())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        final String path = path(request);
+        Path file = path == null ? null : root.resolve(path).normalize();
+        if (file == null || !file.startsWith(root)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (Files.isDirectory(file)) {
+            if (!request.getRequestURI().endsWith("/")) { // relative links of index.html need the trailing slash
+                final String query = request.getQueryString();
+                response.sendRedirect(request.getRequestURI() + '/' + (query == null ? "" : '?' + query));
+                return;
+            }
+            file = file.resolve("index.html");
+        }
+        if (!Files.isRegularFile(file)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        final StaticContentCache.Entry entry = cache.get(file);
+        final String contentType = config.getServletContext().getMimeType(file.getFileName().toString());
+        if (contentType != null) {
+            response.setContentType(contentType);
+        }
+        response.setHeader("Cache-Control", "no-cache"); // always revalidated, the output changes with each render
+        response.setHeader("Vary", "Accept-Encoding");
+        response.setDateHeader("Last-Modified", entry.getLastModified());
+
+        final String accepted = request.getHeader("Accept-Encoding");
+        final String encodings = accepted == null ? "" : accepted.toLowerCase(Locale.ROOT);
+        final Path brotli = !entry.isTransformed() && encodings.contains("br") ? sibling(file, ".br") : null;
+        final Path gzip = brotli == null && !entry.isTransformed() && encodings.contains("gzip") && entry.getGzip() == null
+                ? sibling(file, ".gz")
+                : null;
+        final boolean gzipped = gzip != null || (entry.getGzip() != null && encodings.contains("gzip"));
+        final String etag = entry.getEtag().substring(0, entry.getEtag().length() - 1)
+                + (brotli != null ? "-br\"" : (gzipped ? "-gz\"" : "\""));
+        response.setHeader("ETag", etag);
+        if (isNotModified(request, etag, entry.getLastModified())) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        if (brotli != null) {
+            response.setHeader("Content-Encoding", "br");
+            send(response, brotli, head);
+        } else if (gzip != null) {
+            response.setHeader("Content-Encoding", "gzip");
+            send(response, gzip, head);
+        } else if (gzipped) {
+            response.setHeader("Content-Encoding", "gzip");
+            send(response, entry.getGzip(), head);
+        } else if (entry.getContent() != null) {
+            send(response, entry.getContent(), head);
+        } else {
+            send(response, file, head);
+        }
+    }
+
+    private String path(final HttpServletRequest request) {
+        try {
+            final String path = URLDecoder.decode(
+                    request.getRequestURI().substring(request.getContextPath().length()).replace("+", "%2B"), UTF_8.name());
+            return path.startsWith("/") ? path.substring(1) : path;
+        } catch (final UnsupportedEncodingException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // precompressed variant, only if it is not older than the file it was built from
+    private static Path sibling(final Path file, final String extension) throws IOException {
+        final Path compressed = file.resolveSibling(file.getFileName() + extension);
+        return Files.isRegularFile(compressed)
+                && Files.getLastModifiedTime(compressed).compareTo(Files.getLastModifiedTime(file)) >= 0 ? compressed
+                        : null;
+    }
+
+    private static boolean isNotModified(final HttpServletRequest request, final String etag, final long lastModified) {
+        final String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return "*".equals(ifNoneMatch.trim()) || ifNoneMatch.contains(etag);
+        }
+        try {
+            final long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+            return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+        } catch (final IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static void send(final HttpServletResponse response, final byte[] content, final boolean head)
+            throws IOException {
+        response.setContentLengthLong(content.length);
+        if (!head) {
+            response.getOutputStream().write(content);
+        }
+    }
+
+    private static void send(final HttpServletResponse response, final Path file, final boolean head)
+            throws IOException {
+        response.setContentLengthLong(Files.size(file));
+        if (!head) {
+            Files.copy(file, response.getOutputStream());
+        }
+    }
+}
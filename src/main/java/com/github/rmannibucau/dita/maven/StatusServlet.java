@@ -0,0 +1,29 @@
+package com.github.rmannibucau.dita.maven;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import lombok.RequiredArgsConstructor;
+
+// exposes the render queue state of dita:http as JSON
+@RequiredArgsConstructor
+public class StatusServlet extends HttpServlet {
+
+    public static final String PATH = "/_dita/status";
+
+    private final Supplier<String> status;
+
+    @Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding(UTF_8.name());
+        response.setHeader("Cache-Control", "no-store");
+        response.getWriter().write(status.get());
+    }
+}
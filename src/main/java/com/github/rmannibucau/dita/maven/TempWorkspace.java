@@ -0,0 +1,221 @@
+package com.github.rmannibucau.dita.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.apache.maven.plugin.logging.Log;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// per job temporary directories for DITA-OT: on a RAM backed directory (tmpfs, /dev/shm) while the jobs running
+// there fit in the budget, on disk otherwise. the space a job needs is only known once it ran so each in memory job
+// reserves the biggest size seen so far (a share of the budget until a job completed). the directories are deleted
+// by a background thread, close() waits for these deletions.
+public class TempWorkspace implements AutoCloseable {
+
+    private final File disk;
+
+    private final File memory;
+
+    private final long budget;
+
+    private final Log log;
+
+    private final ExecutorService cleaner;
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    private final AtomicLong memoryJobs = new AtomicLong();
+
+    private final AtomicLong diskJobs = new AtomicLong();
+
+    private final AtomicLong overflows = new AtomicLong();
+
+    private final AtomicLong peak = new AtomicLong();
+
+    // guarded by this
+    private long reserved;
+
+    private long estimate;
+
+    private File memoryRoot;
+
+    // memory: null to only use the disk, budget in bytes
+    public TempWorkspace(final File disk, final File memory, final long budget, final boolean asyncCleanup,
+            final Log log) {
+        this.disk = disk;
+        this.memory = memory != null && memory.isDirectory() && memory.canWrite() && budget > 0 ? memory : null;
+        this.budget = budget;
+        this.log = log;
+        this.estimate = budget / 8;
+        this.cleaner = asyncCleanup ? Executors.newSingleThreadExecutor(r -> {
+            final Thread thread = new Thread(r, "dita-temp-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        if (memory != null && this.memory == null) {
+            log.warn("Can't use " + memory + " for temporary files, using " + disk);
+        }
+    }
+
+    public Lease acquire(final String name) throws IOException {
+        final String directory = name.replaceAll("[^a-zA-Z0-9._-]", "_") + '-' + counter.incrementAndGet();
+        final long reservation = reserve();
+        if (reservation > 0) {
+            memoryJobs.incrementAndGet();
+            final File dir = new File(memoryRoot, directory);
+            Files.createDirectories(dir.toPath());
+            return new Lease(dir, reservation);
+        }
+        diskJobs.incrementAndGet();
+        final File dir = new File(disk, "work/" + directory);
+        Files.createDirectories(dir.toPath());
+        return new Lease(dir, 0);
+    }
+
+    // returns true when the job ran out of the memory budget and should be run again on disk
+    public boolean release(final Lease lease, final boolean keep) {
+        boolean overflowed = false;
+        final File root;
+        synchronized (this) {
+            root = memoryRoot;
+        }
+        if (lease.isInMemory() && root == null) { // late release of a timed out rendering, already deleted by close()
+            return false;
+        }
+        if (lease.isInMemory()) {
+            final long size = size(lease.directory.toPath());
+            peak.accumulateAndGet(size, Math::max);
+            synchronized (this) {
+                reserved -= lease.reservation;
+                estimate = Math.max(estimate, size);
+            }
+            overflowed = size >= budget || root.getUsableSpace() == 0;
+            if (overflowed) {
+                overflows.incrementAndGet();
+            }
+            if (keep) {
+                final File kept = new File(disk, "kept/" + lease.directory.getName());
+                try {
+                    copy(lease.directory.toPath(), kept.toPath());
+                    log.info("Kept temporary files in " + kept);
+                } catch (final IOException e) {
+                    log.warn("Can't copy " + lease.directory + " to " + kept + ": " + e.getMessage());
+                }
+            }
+        } else if (keep) {
+            return false;
+        }
+        delete(lease.directory);
+        return overflowed;
+    }
+
+    public String stats() {
+        return "Temporary files: " + memoryJobs.get() + " jobs in memory (peak " + (peak.get() >> 20) + "MB, "
+                + overflows.get() + " over budget), " + diskJobs.get() + " on disk";
+    }
+
+    @Override
+    public void close() {
+        if (cleaner != null) {
+            cleaner.shutdown();
+            try {
+                if (!cleaner.awaitTermination(1, TimeUnit.MINUTES)) {
+                    log.warn("Temporary files are still being deleted");
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (memoryRoot != null) {
+                try {
+                    Distributions.delete(memoryRoot.toPath());
+                } catch (final IOException e) {
+                    log.warn("Can't delete " + memoryRoot + ": " + e.getMessage());
+                }
+                memoryRoot = null;
+            }
+        }
+    }
+
+    private synchronized long reserve() throws IOException {
+        if (memory == null || reserved + estimate > budget) {
+            return 0;
+        }
+        if (memoryRoot == null) {
+            memoryRoot = Files.createTempDirectory(memory.toPath(), "dita-maven-plugin-").toFile();
+        }
+        if (memoryRoot.getUsableSpace() < estimate) { // tmpfs shared with other processes
+            return 0;
+        }
+        final long reservation = Math.max(1, estimate);
+        reserved += reservation;
+        return reservation;
+    }
+
+    private void delete(final File directory) {
+        final Runnable task = () -> {
+            try {
+                Distributions.delete(directory.toPath());
+            } catch (final IOException e) {
+                log.debug("Can't delete " + directory + ": " + e.getMessage());
+            }
+        };
+        if (cleaner == null) {
+            task.run();
+            return;
+        }
+        try {
+            cleaner.execute(task);
+        } catch (final RejectedExecutionException e) { // closed
+            task.run();
+        }
+    }
+
+    private static long size(final Path directory) {
+        try (final Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).mapToLong(f -> f.toFile().length()).sum();
+        } catch (final IOException | RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private static void copy(final Path from, final Path to) throws IOException {
+        try (final Stream<Path> files = Files.walk(from)) {
+            for (final Path file : (Iterable<Path>) files::iterator) {
+                final Path target = to.resolve(from.relativize(file).toString());
+                if (Files.isDirectory(file)) {
+                    Files.createDirectories(target);
+                } else {
+                    Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class Lease {
+
+        private final File directory;
+
+        // bytes of the memory budget, 0 on disk
+        private final long reservation;
+
+        public boolean isInMemory() {
+            return reservation > 0;
+        }
+    }
+}
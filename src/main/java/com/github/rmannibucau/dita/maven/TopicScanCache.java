@@ -0,0 +1,69 @@
+package com.github.rmannibucau.dita.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// scan results (content hash + local references) shared by all the maps of a build and the renders of a dita:http
+// session: a topic library referenced by many maps is read once instead of once per map. rendering threads asking
+// for a file being scanned wait for that scan instead of doing it again, an entry is reused as long as the file
+// size and last modified date didn't change.
+public class TopicScanCache {
+
+    private final ConcurrentMap<File, CompletableFuture<MapDependencies.FileScan>> scans = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    public MapDependencies.FileScan get(final File file) throws IOException {
+        while (true) {
+            final CompletableFuture<MapDependencies.FileScan> existing = scans.get(file);
+            if (existing != null) {
+                final MapDependencies.FileScan scan;
+                try {
+                    scan = existing.join();
+                } catch (final CompletionException e) {
+                    scans.remove(file, existing);
+                    if (UncheckedIOException.class.isInstance(e.getCause())) {
+                        throw UncheckedIOException.class.cast(e.getCause()).getCause();
+                    }
+                    throw e;
+                }
+                if (scan.isCurrent(file)) {
+                    hits.incrementAndGet();
+                    return scan;
+                }
+                scans.remove(file, existing); // modified since, scan it again
+                continue;
+            }
+            final CompletableFuture<MapDependencies.FileScan> mine = new CompletableFuture<>();
+            if (scans.putIfAbsent(file, mine) != null) {
+                continue;
+            }
+            misses.incrementAndGet();
+            try {
+                final MapDependencies.FileScan scan = MapDependencies.scan(file);
+                mine.complete(scan);
+                return scan;
+            } catch (final IOException e) {
+                scans.remove(file, mine);
+                mine.completeExceptionally(new UncheckedIOException(e));
+                throw e;
+            } catch (final RuntimeException | Error e) {
+                scans.remove(file, mine);
+                mine.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+
+    public String stats() {
+        return "Source scans: " + misses.get() + " files read, " + hits.get() + " reused";
+    }
+}
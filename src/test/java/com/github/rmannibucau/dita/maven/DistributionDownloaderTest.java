@@ -0,0 +1,316 @@
+package com.github.rmannibucau.dita.maven;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class DistributionDownloaderTest {
+
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    private HttpServer server;
+
+    private byte[] content;
+
+    private final String etag = "\"v1\"";
+
+    private volatile boolean ranges = true;
+
+    private volatile boolean headLength = true;
+
+    // "<method> <range header>" of each request
+    private final Collection<String> requests = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger signatures = new AtomicInteger();
+
+    @Before
+    public void start() throws IOException {
+        final ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (final ZipOutputStream out = new ZipOutputStream(zip)) {
+            out.setLevel(0); // big enough for several ranges
+            out.putNextEntry(new ZipEntry("dita-ot-3.0.2/bin/dita"));
+            final byte[] random = new byte[5 * 1024 * 1024];
+            new Random(1234).nextBytes(random);
+            out.write(random);
+            out.closeEntry();
+        }
+        content = zip.toByteArray();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/dita.zip", this::serve);
+        server.createContext("/release/dita.zip", exchange -> { // like GitHub releases: a new signed url each time
+            try (final InputStream ignored = exchange.getRequestBody()) {
+                exchange.getResponseHeaders().set("Location", "/dita.zip?signature=" + signatures.incrementAndGet());
+                exchange.sendResponseHeaders(302, -1);
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    public void ranges() throws IOException {
+        final File target = new File(temp.getRoot(), "dita.zip");
+        downloader(4).download(url(), target, Distributions.sha256(write("expected", content)));
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        assertTrue(requests.stream().filter(r -> r.startsWith("GET bytes=")).count() > 1);
+        assertFalse(new File(temp.getRoot(), "dita.zip.part").exists());
+        assertFalse(new File(temp.getRoot(), "dita.zip.part.properties").exists());
+    }
+
+    @Test
+    public void resumeRanges() throws IOException {
+        final File target = new File(temp.getRoot(), "dita.zip");
+        final long chunk = Math.max(1024 * 1024, content.length / 16);
+        final File part = write("dita.zip.part", content);
+        try (final RandomAccessFile file = new RandomAccessFile(part, "rw")) { // only the first part is there
+            file.seek(chunk);
+            file.write(new byte[content.length - (int) chunk]);
+        }
+        state(chunk, "\"v1\"", "0");
+
+        downloader(4).download(url(), target, null);
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        assertFalse(requests.contains("GET bytes=0-" + (chunk - 1)));
+    }
+
+    @Test
+    public void resumeRangesThroughRedirect() throws IOException {
+        final File target = new File(temp.getRoot(), "dita.zip");
+        final long chunk = Math.max(1024 * 1024, content.length / 16);
+        final File part = write("dita.zip.part", content);
+        try (final RandomAccessFile file = new RandomAccessFile(part, "rw")) {
+            file.seek(chunk);
+            file.write(new byte[content.length - (int) chunk]);
+        }
+        state(release(), chunk, "\"v1\"", "0");
+
+        downloader(4).download(release(), target, null);
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        assertTrue(signatures.get() > 0);
+        assertFalse(requests.toString(), requests.contains("GET bytes=0-" + (chunk - 1)));
+    }
+
+    @Test
+    public void resumeStreamThroughRedirect() throws IOException {
+        final File target = new File(temp.getRoot(), "dita.zip");
+        final int half = content.length / 2;
+        write("dita.zip.part", copy(0, half));
+        streamState(release(), "\"v1\"");
+
+        downloader(0).download(release(), target, null);
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        assertTrue(requests.toString(), requests.contains("GET bytes=" + half + "-"));
+    }
+
+    @Test
+    public void resumeStream() throws IOException {
+        final File target = new File(temp.getRoot(), "dita.zip");
+        final int half = content.length / 2;
+        write("dita.zip.part", copy(0, half));
+        streamState("\"v1\"");
+
+        downloader(0).download(url(), target, null);
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        assertTrue(requests.toString(), requests.contains("GET bytes=" + half + "-"));
+    }
+
+    @Test
+    public void streamDoesntResumeChangedFile() throws IOException {
+        final File target = new File(temp.getRoot(), "dita.zip");
+        write("dita.zip.part", new byte[content.length / 2]);
+        streamState("\"v0\"");
+
+        downloader(0).download(url(), target, null);
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        assertTrue(requests.toString(), requests.contains("GET null"));
+    }
+
+    @Test
+    public void streamDoesntResumePreallocatedPart() throws IOException {
+        final File target = new File(temp.getRoot(), "dita.zip");
+        write("dita.zip.part", new byte[content.length]); // left by an interrupted range download
+        state(content.length / 16, "\"v1\"", "");
+
+        downloader(0).download(url(), target, null);
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        assertTrue(requests.toString(), requests.contains("GET null"));
+    }
+
+    @Test
+    public void rejectedResumeDiscardsPart() throws IOException {
+        final File target = new File(temp.getRoot(), "dita.zip");
+        headLength = false; // the part can't be compared to the remote length
+        write("dita.zip.part", new byte[content.length + 1]);
+        final Properties state = new Properties();
+        state.setProperty("mode", "stream");
+        state.setProperty("url", url().toExternalForm());
+        state.setProperty("length", "-1");
+        state.setProperty("validator", etag);
+        store(state);
+
+        try {
+            downloader(0).download(url(), target, null);
+            fail("the server rejected the range");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("416"));
+        }
+        assertFalse(new File(temp.getRoot(), "dita.zip.part").exists());
+        assertFalse(new File(temp.getRoot(), "dita.zip.part.properties").exists());
+    }
+
+    @Test
+    public void withoutRanges() throws IOException {
+        ranges = false;
+        final File target = new File(temp.getRoot(), "dita.zip");
+        downloader(4).download(url(), target, null);
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        assertTrue(requests.toString(), requests.contains("GET null"));
+    }
+
+    @Test
+    public void checksum() throws IOException {
+        final File target = new File(temp.getRoot(), "dita.zip");
+        try {
+            downloader(4).download(url(), target, "0000");
+            fail("invalid checksum");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Invalid checksum"));
+        }
+        assertFalse(target.exists());
+        assertFalse(new File(temp.getRoot(), "dita.zip.part").exists());
+    }
+
+    private DistributionDownloader downloader(final int connections) {
+        return new DistributionDownloader(connections, new SystemStreamLog());
+    }
+
+    private URL url() throws IOException {
+        return new URL("http://localhost:" + server.getAddress().getPort() + "/dita.zip");
+    }
+
+    private URL release() throws IOException {
+        return new URL("http://localhost:" + server.getAddress().getPort() + "/release/dita.zip");
+    }
+
+    private byte[] copy(final int from, final int to) {
+        final byte[] bytes = new byte[to - from];
+        System.arraycopy(content, from, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    private File write(final String name, final byte[] bytes) throws IOException {
+        final File file = new File(temp.getRoot(), name);
+        Files.write(file.toPath(), bytes);
+        return file;
+    }
+
+    private void state(final long chunk, final String validator, final String done) throws IOException {
+        state(url(), chunk, validator, done);
+    }
+
+    private void state(final URL url, final long chunk, final String validator, final String done) throws IOException {
+        final Properties state = new Properties();
+        state.setProperty("url", url.toExternalForm());
+        state.setProperty("length", Long.toString(content.length));
+        state.setProperty("chunk", Long.toString(chunk));
+        state.setProperty("validator", validator);
+        state.setProperty("done", done);
+        store(state);
+    }
+
+    private void streamState(final String validator) throws IOException {
+        streamState(url(), validator);
+    }
+
+    private void streamState(final URL url, final String validator) throws IOException {
+        final Properties state = new Properties();
+        state.setProperty("mode", "stream");
+        state.setProperty("url", url.toExternalForm());
+        state.setProperty("length", Long.toString(content.length));
+        state.setProperty("validator", validator);
+        store(state);
+    }
+
+    private void store(final Properties state) throws IOException {
+        try (final OutputStream stream = Files.newOutputStream(new File(temp.getRoot(), "dita.zip.part.properties").toPath())) {
+            state.store(stream, "test");
+        }
+    }
+
+    private void serve(final HttpExchange exchange) throws IOException {
+        try (final InputStream ignored = exchange.getRequestBody()) {
+            final String range = exchange.getRequestHeaders().getFirst("Range");
+            final String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            requests.add(exchange.getRequestMethod() + ' ' + range);
+            final byte[] served = content;
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (ranges) {
+                exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            }
+            long from = 0;
+            long to = served.length - 1;
+            int status = 200;
+            if (ranges && range != null && (ifRange == null || ifRange.equals(etag))) {
+                final String[] bounds = range.substring("bytes=".length()).split("-", -1);
+                from = Long.parseLong(bounds[0]);
+                to = bounds[1].isEmpty() ? served.length - 1 : Math.min(served.length - 1, Long.parseLong(bounds[1]));
+                if (from >= served.length) {
+                    exchange.getResponseHeaders().set("Content-Range", "bytes */" + served.length);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                status = 206;
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + from + '-' + to + '/' + served.length);
+            }
+            final long length = to - from + 1;
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                if (headLength) {
+                    exchange.getResponseHeaders().set("Content-Length", Long.toString(length));
+                }
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(status, length);
+            try (final OutputStream out = exchange.getResponseBody()) {
+                out.write(served, (int) from, (int) length);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.github.rmannibucau.dita.maven;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// the shards are real dita:render executions (shardIndex/shardCount) using the DITA-OT test double of org.dita.dost
+public class DitaMergeMojoTest {
+
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    private File ditaDir;
+
+    @Before
+    public void sources() throws IOException {
+        ditaDir = temp.newFolder("dita");
+    }
+
+    @Test
+    public void mergeShards() throws Exception {
+        final List<String> maps = maps(12, -1);
+        final List<File> shards = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            shards.add(render(i, 3));
+        }
+        // each shard rendered some maps and only its own ones
+        final Collection<String> rendered = new ArrayList<>();
+        for (final File shard : shards) {
+            final Collection<String> own = html(shard);
+            assertFalse(own.isEmpty());
+            rendered.addAll(own);
+        }
+        assertEquals(maps.size(), rendered.size());
+        assertEquals(maps.stream().map(m -> m + ".html").collect(toSet()), new TreeSet<>(rendered));
+
+        final File output = temp.newFolder("merged");
+        write(new File(output, "previous.html"), "kept");
+        merge(shards, output);
+
+        for (final String map : maps) {
+            assertEquals(read(new File(ditaDir, map + ".ditamap")), read(new File(output, map + ".html")));
+        }
+        assertEquals("shared", read(new File(output, "commonhtml5.css")));
+        assertEquals("kept", read(new File(output, "previous.html")));
+        assertFalse(new File(output, Shards.MANIFEST).exists());
+        assertFalse(new File(output, "stale.html").exists());
+
+        // same site as a single dita:render
+        final File single = render(0, 1);
+        assertEquals(tree(single), tree(output).stream().filter(f -> !f.equals("previous.html")).collect(toSet()));
+    }
+
+    @Test
+    public void missingShard() throws Exception {
+        maps(6, -1);
+        final File shard = render(0, 2);
+        final File output = temp.newFolder("merged");
+        try {
+            merge(singletonList(shard), output);
+            fail("shard 1 is missing");
+        } catch (final MojoFailureException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("(shard 1)"));
+        }
+        assertEquals(0, tree(output).size());
+    }
+
+    @Test
+    public void failedMap() throws Exception {
+        final List<String> maps = maps(6, 2);
+        final List<File> shards = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            try {
+                shards.add(render(i, 2));
+            } catch (final MojoFailureException e) { // the shard still writes its manifest
+                assertTrue(e.getMessage(), e.getMessage().contains(maps.get(2)));
+                shards.add(new File(temp.getRoot(), "shard" + i + "-2"));
+            }
+        }
+        final File output = temp.newFolder("merged");
+        try {
+            merge(shards, output);
+            fail(maps.get(2) + " wasn't rendered");
+        } catch (final MojoFailureException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(maps.get(2) + ".ditamap (shard "));
+        }
+        assertEquals(0, tree(output).size());
+    }
+
+    @Test
+    public void conflict() throws Exception {
+        maps(4, -1);
+        final List<File> shards = asList(render(0, 2), render(1, 2));
+        final File css = new File(shards.get(1), "commonhtml5.css");
+        write(css, "changed");
+        final Properties manifest = Shards.readManifest(shards.get(1));
+        manifest.setProperty("file.commonhtml5.css", Distributions.sha256(css));
+        store(shards.get(1), manifest);
+
+        final File output = temp.newFolder("merged");
+        try {
+            merge(shards, output);
+            fail("commonhtml5.css differs");
+        } catch (final MojoFailureException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("commonhtml5.css ("));
+        }
+        assertEquals(0, tree(output).size());
+    }
+
+    @Test
+    public void pathOutsideOfOutputDir() throws Exception {
+        maps(4, -1);
+        final List<File> shards = asList(render(0, 2), render(1, 2));
+        final File outside = new File(temp.getRoot(), "outside.html");
+        write(outside, "outside");
+        final Properties manifest = Shards.readManifest(shards.get(1));
+        manifest.setProperty("file.../outside.html", Distributions.sha256(outside));
+        store(shards.get(1), manifest);
+
+        final File output = temp.newFolder("merged");
+        try {
+            merge(shards, output);
+            fail("../outside.html is not in the shard");
+        } catch (final MojoExecutionException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Invalid path ../outside.html"));
+        }
+        assertEquals(0, tree(output).size());
+    }
+
+    // dm-map<i>.ditamap referencing its own topic, the failing map makes the DITA-OT test double throw
+    private List<String> maps(final int count, final int failing) throws IOException {
+        final List<String> maps = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final String name = "dm-map" + i;
+            write(new File(ditaDir, "topic" + i + ".dita"), "<topic id=\"t" + i + "\"><title>" + i + "</title></topic>");
+            write(new File(ditaDir, name + ".ditamap"), "<map><title>" + name + "</title><topicref href=\"topic" + i
+                    + ".dita\"/>" + (i == failing ? "<!-- fail -->" : "") + "</map>");
+            maps.add(name);
+        }
+        return maps;
+    }
+
+    // dita:render -Ddita.shardIndex=index -Ddita.shardCount=count, a stale file left in outputDir must not be merged
+    private File render(final int index, final int count) throws Exception {
+        final File output = new File(temp.getRoot(), "shard" + index + "-" + count);
+        write(new File(output, "stale.html"), "stale");
+        final File work = new File(temp.getRoot(), "work" + index + "-" + count);
+        final File distribution = new File(work, "temp/dita_distribution");
+        new File(distribution, "config").mkdirs();
+        new File(distribution, "lib").mkdirs();
+        write(new File(distribution, ".dita-distribution.properties"),
+                "archive=" + new File(work, "missing.zip").getAbsolutePath().replace('\\', '/'));
+
+        final MavenProject project = new MavenProject();
+        project.setFile(new File(work, "pom.xml"));
+        project.getBuild().setDirectory(work.getAbsolutePath());
+        project.getBuild().setFinalName("site");
+        final MavenExecutionRequest request = new DefaultMavenExecutionRequest();
+        @SuppressWarnings("deprecation")
+        final MavenSession session = new MavenSession(null, new DefaultRepositorySystemSession(), request,
+                new DefaultMavenExecutionResult());
+
+        final DitaRenderMojo mojo = new DitaRenderMojo();
+        set(mojo, "ditaDir", ditaDir);
+        set(mojo, "patterns", singletonList("dm\\-.*ditamap"));
+        set(mojo, "outputDir", output);
+        set(mojo, "ditaTempDir", new File(work, "temp"));
+        set(mojo, "transtype", "html5");
+        set(mojo, "cleanOnFailure", true);
+        set(mojo, "memoryTempBudget", 512L);
+        set(mojo, "asyncTempCleanup", true);
+        set(mojo, "parallelism", 2);
+        set(mojo, "renderMemory", 256L);
+        set(mojo, "factoryPoolMin", 1);
+        set(mojo, "factoryPoolMax", -1);
+        set(mojo, "factoryIdleTimeout", 300L);
+        set(mojo, "mode", "STRICT");
+        set(mojo, "ditaVersion", "3.0.2");
+        set(mojo, "incremental", true);
+        set(mojo, "stagedOutput", true);
+        set(mojo, "shardIndex", index);
+        set(mojo, "shardCount", count);
+        set(mojo, "logBufferSize", 8192);
+        set(mojo, "logOverflow", AsyncLog.OverflowPolicy.BLOCK);
+        set(mojo, "packageClassifier", "site");
+        set(mojo, "packageCompressionLevel", 6);
+        set(mojo, "session", session);
+        set(mojo, "project", project);
+        try {
+            mojo.execute();
+        } finally {
+            request.getExecutionListener().sessionEnded(null); // closes the DITA runtime
+        }
+        return output;
+    }
+
+    private void merge(final List<File> shards, final File output) throws Exception {
+        final DitaMergeMojo mojo = new DitaMergeMojo();
+        set(mojo, "shardDirectories", shards);
+        set(mojo, "outputDir", output);
+        set(mojo, "failOnConflict", true);
+        set(mojo, "shardCostsOutput", new File(temp.getRoot(), "history.properties"));
+        mojo.execute();
+    }
+
+    private static Collection<String> html(final File shard) throws IOException {
+        return tree(shard).stream().filter(f -> f.startsWith("dm-")).collect(toSet());
+    }
+
+    // relative paths of the files of a directory, without the shard manifest and stale files
+    private static Collection<String> tree(final File directory) throws IOException {
+        final Path root = directory.toPath();
+        try (final Stream<Path> files = Files.walk(root)) {
+            return files.filter(Files::isRegularFile).map(f -> root.relativize(f).toString().replace('\\', '/'))
+                    .filter(f -> !f.equals(Shards.MANIFEST) && !f.equals("stale.html")).collect(toSet());
+        }
+    }
+
+    private static Collector<String, ?, TreeSet<String>> toSet() {
+        return Collectors.toCollection(TreeSet::new);
+    }
+
+    private static void store(final File shard, final Properties manifest) throws IOException {
+        try (final OutputStream stream = Files.newOutputStream(new File(shard, Shards.MANIFEST).toPath())) {
+            manifest.store(stream, "edited");
+        }
+    }
+
+    private static String read(final File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), UTF_8);
+    }
+
+    private static void write(final File file, final String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(UTF_8));
+    }
+
+    private static void set(final Object instance, final String name, final Object value) throws Exception {
+        final Field field = instance.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(instance, value);
+    }
+}
@@ -0,0 +1,63 @@
+package org.dita.dost;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.dita.dost.util.Configuration;
+import org.slf4j.Logger;
+
+// test double of the DITA-OT processor: <map>.html is the map content, all the maps of a folder share a css
+public class Processor {
+
+    private final String transtype;
+
+    private File input;
+
+    private File output;
+
+    public Processor(final String transtype) {
+        this.transtype = transtype;
+    }
+
+    public void cleanOnFailure(final boolean cleanOnFailure) {
+        // no-op
+    }
+
+    public void createDebugLog(final boolean createDebugLog) {
+        // no-op
+    }
+
+    public void setProperties(final Map<String, String> properties) {
+        // no-op
+    }
+
+    public void setLogger(final Logger logger) {
+        // no-op
+    }
+
+    public void setMode(final Configuration.Mode mode) {
+        // no-op
+    }
+
+    public void setInput(final File input) {
+        this.input = input;
+    }
+
+    public void setOutputDir(final File output) {
+        this.output = output;
+    }
+
+    public void run() throws Exception {
+        final String content = new String(Files.readAllBytes(input.toPath()), UTF_8);
+        if (content.contains("<!-- fail -->")) {
+            throw new IllegalStateException("Can't render " + input.getName());
+        }
+        final String name = input.getName();
+        output.mkdirs();
+        Files.write(new File(output, name.substring(0, name.lastIndexOf('.')) + ".html").toPath(), content.getBytes(UTF_8));
+        Files.write(new File(output, "common" + transtype + ".css").toPath(), "shared".getBytes(UTF_8));
+    }
+}
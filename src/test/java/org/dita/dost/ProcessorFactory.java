@@ -0,0 +1,19 @@
+package org.dita.dost;
+
+import java.io.File;
+
+// test double of the DITA-OT entry point, see Processor
+public class ProcessorFactory {
+
+    public static ProcessorFactory newInstance(final File ditaDir) {
+        return new ProcessorFactory();
+    }
+
+    public void setBaseTempDir(final File tempDir) {
+        // no-op
+    }
+
+    public Processor newProcessor(final String transtype) {
+        return new Processor(transtype);
+    }
+}
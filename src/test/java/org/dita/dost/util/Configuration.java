@@ -0,0 +1,12 @@
+package org.dita.dost.util;
+
+public final class Configuration {
+
+    public enum Mode {
+        STRICT, LAX, SKIP
+    }
+
+    private Configuration() {
+        // no-op
+    }
+}